@@ -88,17 +88,8 @@ public class ZWaveDimmerDeviceDriverInstance extends ZWaveDriverInstance impleme
 	private void initializeStates()
 	{
 		// get the initial state of the device
-		Runnable worker = new Runnable()
-		{
-			public void run()
-			{
-				if (handler != null)
-					handler.read(nodeInfo, true);
-			}
-		};
-
-		Thread workerThread = new Thread(worker);
-		workerThread.start();
+		if (handler != null)
+			handler.scheduleInitialRead(nodeInfo);
 
 	}
 
@@ -126,7 +117,7 @@ public class ZWaveDimmerDeviceDriverInstance extends ZWaveDriverInstance impleme
 
 			if (updatedOnOff || updatedLevel)
 				// update the monitor admin
-				this.updateStatus();
+				this.requestStatusUpdate();
 
 		}
 	}
@@ -161,7 +152,14 @@ public class ZWaveDimmerDeviceDriverInstance extends ZWaveDriverInstance impleme
 
 				logger.debug("Device " + device.getDeviceId() + " is now "
 						+ ((OnOffState) onState).getCurrentStateValue()[0].getValue());
-				this.notifyOn();
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyOn();
+					}
+				});
 			}
 			else
 			{
@@ -171,7 +169,14 @@ public class ZWaveDimmerDeviceDriverInstance extends ZWaveDriverInstance impleme
 
 				logger.debug("Device " + device.getDeviceId() + " is now "
 						+ ((OnOffState) offState).getCurrentStateValue()[0].getValue());
-				this.notifyOff();
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyOff();
+					}
+				});
 			}
 
 			// set the state change flag at true
@@ -212,7 +217,14 @@ public class ZWaveDimmerDeviceDriverInstance extends ZWaveDriverInstance impleme
 			currentState.setState(LevelState.class.getSimpleName(), new LevelState(pValue));
 
 			// send the changed level notification
-			this.notifyChangedLevel(DecimalMeasure.valueOf(nLevel, Unit.ONE));
+			this.notifyAsync(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					notifyChangedLevel(DecimalMeasure.valueOf(nLevel, Unit.ONE));
+				}
+			});
 
 			// the state is changed
 			stateChanged = true;
@@ -74,17 +74,8 @@ public class ZWaveDoorWindowSensorDriverInstance extends ZWaveDriverInstance
 				new OpenCloseState(new CloseStateValue()));
 
 		// get the initial state of the device
-		Runnable worker = new Runnable()
-		{
-			public void run()
-			{
-				if (handler != null)
-					handler.read(nodeInfo, true);
-			}
-		};
-
-		Thread workerThread = new Thread(worker);
-		workerThread.start();
+		if (handler != null)
+			handler.scheduleInitialRead(nodeInfo);
 
 	}
 
@@ -105,7 +96,7 @@ public class ZWaveDoorWindowSensorDriverInstance extends ZWaveDriverInstance
 					? OpenCloseState.OPEN : OpenCloseState.CLOSE)))
 			{
 				// notify state changed
-				this.updateStatus();
+				this.requestStatusUpdate();
 			}
 		}
 
@@ -144,7 +135,15 @@ public class ZWaveDoorWindowSensorDriverInstance extends ZWaveDriverInstance
 				currentState.setState(OpenCloseState.class.getSimpleName(),
 						closeState);
 
-				notifyClose(); // notify close
+				// notify close
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyClose();
+					}
+				});
 			}
 			else
 			{
@@ -154,7 +153,15 @@ public class ZWaveDoorWindowSensorDriverInstance extends ZWaveDriverInstance
 				currentState.setState(OpenCloseState.class.getSimpleName(),
 						openState);
 
-				notifyOpen(); // notify open
+				// notify open
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyOpen();
+					}
+				});
 			}
 
 			logger.debug("Device " + device.getDeviceId()
@@ -343,7 +343,14 @@ public class ZWaveGatewayDriverInstance extends ZWaveDriverInstance implements Z
 
 					if (this.changeState(new DeviceAssociationState(new IdleStateValue())))
 						// notify the current idle state
-						this.notifyIdle();
+						this.notifyAsync(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								notifyIdle();
+							}
+						});
 
 					break;
 				}
@@ -351,7 +358,14 @@ public class ZWaveGatewayDriverInstance extends ZWaveDriverInstance implements Z
 				{
 					if (this.changeState(new DeviceAssociationState(new AssociatingStateValue())))
 						// notify the current associating state
-						this.notifyAssociating();
+						this.notifyAsync(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								notifyAssociating();
+							}
+						});
 
 					break;
 				}
@@ -359,7 +373,14 @@ public class ZWaveGatewayDriverInstance extends ZWaveDriverInstance implements Z
 				{
 					if (this.changeState(new DeviceAssociationState(new DisassociatingStateValue())))
 						// notify the current disassociating state
-						this.notifyDisassociating();
+						this.notifyAsync(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								notifyDisassociating();
+							}
+						});
 
 					break;
 				}
@@ -660,17 +681,8 @@ public class ZWaveGatewayDriverInstance extends ZWaveDriverInstance implements Z
 				new DeviceAssociationState(new IdleStateValue()));
 
 		// get the initial state of the device
-		Runnable worker = new Runnable()
-		{
-			public void run()
-			{
-				if (handler != null)
-					handler.read(nodeInfo, true);
-			}
-		};
-
-		Thread workerThread = new Thread(worker);
-		workerThread.start();
+		if (handler != null)
+			handler.scheduleInitialRead(nodeInfo);
 
 	}
 
@@ -704,7 +716,7 @@ public class ZWaveGatewayDriverInstance extends ZWaveDriverInstance implements Z
 					+ (newState).getCurrentStateValue()[0].getValue());
 
 			// update the status
-			this.updateStatus();
+			this.requestStatusUpdate();
 
 			// updated the state changed flag
 			stateChanged = true;
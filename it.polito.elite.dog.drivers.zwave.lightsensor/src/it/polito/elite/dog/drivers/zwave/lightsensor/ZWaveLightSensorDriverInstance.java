@@ -79,17 +79,8 @@ public class ZWaveLightSensorDriverInstance extends ZWaveDriverInstance implemen
 		currentState.setState(LightIntensityState.class.getSimpleName(), new LightIntensityState(value));
 
 		// get the initial state of the device
-		Runnable worker = new Runnable()
-		{
-			public void run()
-			{
-				if (handler != null)
-					handler.read(nodeInfo, true);
-			}
-		};
-
-		Thread workerThread = new Thread(worker);
-		workerThread.start();
+		if (handler != null)
+			handler.scheduleInitialRead(nodeInfo);
 	}
 
 	@Override
@@ -118,7 +109,7 @@ public class ZWaveLightSensorDriverInstance extends ZWaveDriverInstance implemen
 			this.changeLightIntensityState(measure, SI.LUX.getSymbol());
 
 			// update the state
-			this.updateStatus();
+			this.requestStatusUpdate();
 
 		}
 	}
@@ -140,7 +131,14 @@ public class ZWaveLightSensorDriverInstance extends ZWaveDriverInstance implemen
 			// debug
 			logger.debug("Device " + device.getDeviceId() + " light-intensity " + luminosityValue.toString());
 
-			this.notifyNewLuminosityValue(luminosityValue);
+			this.notifyAsync(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					notifyNewLuminosityValue(luminosityValue);
+				}
+			});
 		}
 	}
 
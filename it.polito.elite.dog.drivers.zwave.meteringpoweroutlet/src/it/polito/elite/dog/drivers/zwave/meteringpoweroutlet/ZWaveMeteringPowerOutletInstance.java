@@ -49,18 +49,24 @@ import it.polito.elite.dog.core.library.model.statevalue.OffStateValue;
 import it.polito.elite.dog.core.library.model.statevalue.OnStateValue;
 import it.polito.elite.dog.core.library.model.statevalue.StateValue;
 import it.polito.elite.dog.drivers.zwave.model.ZWaveRawCommandClass;
-import it.polito.elite.dog.drivers.zwave.model.zway.json.CommandClasses;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.CommandClassesData;
 import it.polito.elite.dog.drivers.zwave.model.zway.json.Controller;
-import it.polito.elite.dog.drivers.zwave.model.zway.json.DataElemObject;
 import it.polito.elite.dog.drivers.zwave.model.zway.json.Device;
 import it.polito.elite.dog.drivers.zwave.model.zway.json.Instance;
 import it.polito.elite.dog.drivers.zwave.network.ZWaveDriverInstance;
+import it.polito.elite.dog.drivers.zwave.network.info.ZWaveDataPoint;
 import it.polito.elite.dog.drivers.zwave.network.info.ZWaveNodeInfo;
+import it.polito.elite.dog.drivers.zwave.network.interfaces.ZWaveDataPointListener;
 import it.polito.elite.dog.drivers.zwave.network.interfaces.ZWaveNetwork;
 import it.polito.elite.dog.drivers.zwave.network.interfaces.ZWaveNetworkHandler;
 
-public class ZWaveMeteringPowerOutletInstance extends ZWaveDriverInstance implements MeteringPowerOutlet
+public class ZWaveMeteringPowerOutletInstance extends ZWaveDriverInstance
+		implements MeteringPowerOutlet, ZWaveDataPointListener
 {
+	// meter values are in commandClasses.50.data.0 (kWh) and
+	// commandClasses.50.data.2 (W)
+	private static final String ENERGY_PATH = "0.val";
+	private static final String POWER_PATH = "2.val";
 	// the class logger
 	private Logger logger;
 
@@ -70,6 +76,12 @@ public class ZWaveMeteringPowerOutletInstance extends ZWaveDriverInstance implem
 	// the scene set
 	private HashSet<Integer> scenes;
 
+	// the state change flags, set by data point notifications and cleared
+	// when the status is updated
+	private boolean energyUpdated = false;
+	private boolean powerUpdated = false;
+	private boolean onOffUpdated = false;
+
 	public ZWaveMeteringPowerOutletInstance(ZWaveNetwork network, ControllableDevice device, int deviceId,
 			Set<Integer> instancesId, String gatewayEndpoint, int gatewayNodeId, int updateTimeMillis, Logger logger,
 			BundleContext context)
@@ -119,18 +131,24 @@ public class ZWaveMeteringPowerOutletInstance extends ZWaveDriverInstance implem
 
 				new SinglePhaseActivePowerMeasurementState(new StateValue[] { powerStateValue }));
 
-		// get the initial state of the device
-		Runnable worker = new Runnable()
+		// subscribe the data points of interest
+		if (handler != null)
 		{
-			public void run()
+			for (Integer instanceId : nodeInfo.getInstanceSet())
 			{
-				if (handler != null)
-					handler.read(nodeInfo, true);
+				int nodeId = nodeInfo.getDeviceNodeId();
+				handler.subscribe(new ZWaveDataPoint(nodeId, instanceId, ZWaveRawCommandClass.COMMAND_CLASS_METER,
+						ENERGY_PATH), this);
+				handler.subscribe(new ZWaveDataPoint(nodeId, instanceId, ZWaveRawCommandClass.COMMAND_CLASS_METER,
+						POWER_PATH), this);
+				handler.subscribe(new ZWaveDataPoint(nodeId, instanceId,
+						ZWaveRawCommandClass.COMMAND_CLASS_SWITCH_BINARY, CommandClassesData.FIELD_LEVEL), this);
 			}
-		};
+		}
 
-		Thread workerThread = new Thread(worker);
-		workerThread.start();
+		// get the initial state of the device
+		if (handler != null)
+			handler.scheduleInitialRead(nodeInfo);
 
 	}
 
@@ -212,81 +230,53 @@ public class ZWaveMeteringPowerOutletInstance extends ZWaveDriverInstance implem
 	}
 
 	@Override
-	public void newMessageFromHouse(Device deviceNode, Instance instanceNode, Controller controllerNode, String sValue)
+	public synchronized void newMessageFromHouse(Device deviceNode, Instance instanceNode, Controller controllerNode,
+			String sValue)
 	{
 		this.deviceNode = deviceNode;
 
-		// Read the value associated with the right CommandClass:
-		// meter has only one instance(0) and meter values are in
-		// devices.X.instances.0.commandClasses.50.data.0 (KwH) and
-		// devices.X.instances.0.commandClasses.50.data.2 (W)
-		CommandClasses ccElectricityEntry = instanceNode.getCommandClasses()
-				.get(ZWaveRawCommandClass.COMMAND_CLASS_METER);
-
-		// the energy updated flag
-		boolean energyUpdated = false;
+		// values are delivered by data point notifications, here only the
+		// status is updated, if needed
+		if (this.onOffUpdated || this.energyUpdated || this.powerUpdated)
+		{
+			this.onOffUpdated = false;
+			this.energyUpdated = false;
+			this.powerUpdated = false;
 
-		// the power updated flag
-		boolean powerUpdated = false;
+			this.requestStatusUpdate();
+		}
+	}
 
-		if (ccElectricityEntry != null)
+	@Override
+	public synchronized void dataPointChanged(ZWaveDataPoint dataPoint, double oldValue, double newValue,
+			long updateTime)
+	{
+		if (dataPoint.getCommandClass() == ZWaveRawCommandClass.COMMAND_CLASS_SWITCH_BINARY)
 		{
-			// Check if it is a real new value or if it is an old one. We can
-			// use
-			// one of the cc available
-			DataElemObject instance0 = ccElectricityEntry.get("0");
-
-			if (instance0 != null)
+			// update the on/off state
+			this.onOffUpdated |= this.changeOnOffState((newValue > 0) ? OnOffState.ON : OnOffState.OFF);
+		}
+		// first time we only save update time, no more
+		else if (!Double.isNaN(oldValue))
+		{
+			// update last update time
+			if (this.lastUpdateTime < updateTime)
 			{
-				long updateTime = instance0.getDataElem("val").getUpdateTime();
-
-				// first time we only save update time, no more
-				if (lastUpdateTime == 0)
-					lastUpdateTime = updateTime;
-
-				else if (lastUpdateTime < updateTime)
-				{
-					// update last update time
-					lastUpdateTime = updateTime;
-					nFailedUpdate = 0;
-
-					// handle energy data if available
-					DataElemObject energyEntry = ccElectricityEntry.get("0");
-					if (energyEntry != null)
-					{
-						this.changeActiveEnergyState(Double.valueOf(energyEntry.getDataElemValue("val").toString()));
-
-						energyUpdated = true;
-
-					}
-
-					// handle power data if available
-					DataElemObject powerEntry = ccElectricityEntry.get("2");
-					if (powerEntry != null)
-					{
-						this.changeActivePowerState(Double.valueOf(powerEntry.getDataElemValue("val").toString()));
-
-						powerUpdated = true;
+				this.lastUpdateTime = updateTime;
+				this.nFailedUpdate = 0;
+			}
 
-					}
-				}
+			if (dataPoint.getDataPath().equals(ENERGY_PATH))
+			{
+				this.changeActiveEnergyState(newValue);
+				this.energyUpdated = true;
+			}
+			else
+			{
+				this.changeActivePowerState(newValue);
+				this.powerUpdated = true;
 			}
 		}
-
-		// always update on-off state
-		int nLevel = 0;
-		CommandClasses ccEntryOnOff = instanceNode.getCommandClasses()
-				.get(ZWaveRawCommandClass.COMMAND_CLASS_SWITCH_BINARY);
-
-		if (ccEntryOnOff != null)
-			nLevel = ccEntryOnOff.getLevelAsInt();
-
-		// update the on/off state
-		boolean onoffChanged = this.changeOnOffState((nLevel > 0) ? OnOffState.ON : OnOffState.OFF);
-
-		if (onoffChanged || energyUpdated || powerUpdated)
-			this.updateStatus();
-
 	}
 
 	/**
@@ -311,7 +301,14 @@ public class ZWaveMeteringPowerOutletInstance extends ZWaveDriverInstance implem
 		logger.debug("Device " + device.getDeviceId() + " active energy " + value.toString());
 
 		// notify energy change
-		this.notifyNewActiveEnergyValue(value);
+		this.notifyAsync(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				notifyNewActiveEnergyValue(value);
+			}
+		});
 
 	}
 
@@ -336,7 +333,14 @@ public class ZWaveMeteringPowerOutletInstance extends ZWaveDriverInstance implem
 		logger.debug("Device " + device.getDeviceId() + " active power " + powerValue.toString());
 
 		// notify the state change
-		this.notifyNewActivePowerValue(powerValue);
+		this.notifyAsync(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				notifyNewActivePowerValue(powerValue);
+			}
+		});
 
 	}
 
@@ -369,14 +373,28 @@ public class ZWaveMeteringPowerOutletInstance extends ZWaveDriverInstance implem
 				newState = new OnOffState(new OnStateValue());
 
 				// send the on notification
-				this.notifyOn();
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyOn();
+					}
+				});
 			}
 			else
 			{
 				newState = new OnOffState(new OffStateValue());
 
 				// send the off notification
-				this.notifyOff();
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyOff();
+					}
+				});
 			}
 			// ... then set the new state for the device and throw a state
 			// changed notification
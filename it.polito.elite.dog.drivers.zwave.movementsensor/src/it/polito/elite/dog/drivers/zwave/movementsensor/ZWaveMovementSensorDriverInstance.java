@@ -69,17 +69,8 @@ public class ZWaveMovementSensorDriverInstance extends ZWaveDriverInstance imple
 		this.currentState.setState(MovementState.class.getSimpleName(), new MovementState(new NotMovingStateValue()));
 
 		// get the initial state of the device
-		Runnable worker = new Runnable()
-		{
-			public void run()
-			{
-				if (handler != null)
-					handler.read(nodeInfo, true);
-			}
-		};
-
-		Thread workerThread = new Thread(worker);
-		workerThread.start();
+		if (handler != null)
+			handler.scheduleInitialRead(nodeInfo);
 
 	}
 
@@ -96,7 +87,7 @@ public class ZWaveMovementSensorDriverInstance extends ZWaveDriverInstance imple
 			// notify open/close only if changed
 			if (changeMovementState((ccEntry.getLevelAsBoolean() ? MovementState.ISMOVING : MovementState.NOTMOVING)))
 				// notify state changed
-				this.updateStatus();
+				this.requestStatusUpdate();
 
 	}
 
@@ -129,7 +120,15 @@ public class ZWaveMovementSensorDriverInstance extends ZWaveDriverInstance imple
 				MovementState movState = new MovementState(new MovingStateValue());
 				currentState.setState(MovementState.class.getSimpleName(), movState);
 
-				this.notifyStartedMovement(); // notify moving
+				// notify moving
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyStartedMovement();
+					}
+				});
 			}
 			else
 			{
@@ -137,7 +136,15 @@ public class ZWaveMovementSensorDriverInstance extends ZWaveDriverInstance imple
 				MovementState movState = new MovementState(new NotMovingStateValue());
 				currentState.setState(MovementState.class.getSimpleName(), movState);
 
-				this.notifyCeasedMovement(); // notify not moving
+				// notify not moving
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyCeasedMovement();
+					}
+				});
 
 			}
 
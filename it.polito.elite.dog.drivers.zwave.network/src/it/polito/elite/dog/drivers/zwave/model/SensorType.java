@@ -6,4 +6,10 @@ public class SensorType
 	public static final String SENSORTYPE_LUMINISCENCE = "Luminiscence";
 	public static final String SENSORTYPE_TEMPERATURE = "Temperature";
 	public static final String SENSORTYPE_HUMIDITY = "Humidity";
+
+	// the sensor type ids, i.e., the numeric keys under which multilevel
+	// sensors reporting more than one value store each of them
+	public static final int SENSORTYPE_ID_TEMPERATURE = 1;
+	public static final int SENSORTYPE_ID_LUMINISCENCE = 3;
+	public static final int SENSORTYPE_ID_HUMIDITY = 5;
 }
@@ -92,6 +92,26 @@ public class CommandClasses
 		this.userGet = userGet;
 	}
 
+	public Map<String, List<GetSetEntry>> getConfigGet()
+	{
+		return configGet;
+	}
+
+	public void setConfigGet(Map<String, List<GetSetEntry>> configGet)
+	{
+		this.configGet = configGet;
+	}
+
+	public Map<String, List<GetSetEntry>> getConfigSet()
+	{
+		return configSet;
+	}
+
+	public void setConfigSet(Map<String, List<GetSetEntry>> configSet)
+	{
+		this.configSet = configSet;
+	}
+
 	/**
 	 * @return UpdateTime of LEVEL field from ZWay server
 	 */
@@ -228,4 +248,21 @@ public class CommandClasses
 		else
 			return false;
 	}
+
+	/**
+	 * Creates a shallow copy of this command class, sharing all its elements
+	 * 
+	 * @return the copy
+	 */
+	public CommandClasses copy()
+	{
+		CommandClasses copy = new CommandClasses();
+		copy.userSet = this.userSet;
+		copy.userGet = this.userGet;
+		copy.configGet = this.configGet;
+		copy.configSet = this.configSet;
+		copy.name = this.name;
+		copy.data = this.data;
+		return copy;
+	}
 }
@@ -207,4 +207,27 @@ public class CommandClassesData
 		
 		return true;
 	}
+
+	/**
+	 * Creates a shallow copy of this element: the copy shares the nested data
+	 * elements, but not the map holding them, therefore it can be modified
+	 * without affecting this element.
+	 * 
+	 * @return the copy
+	 */
+	public CommandClassesData copy()
+	{
+		return new CommandClassesData(this);
+	}
+
+	// the copy constructor
+	private CommandClassesData(CommandClassesData other)
+	{
+		this.updateTime = other.updateTime;
+		this.name = other.name;
+		this.value = other.value;
+		this.type = other.type;
+		this.invalidateTime = other.invalidateTime;
+		this.data.putAll(other.data);
+	}
 }
@@ -31,4 +31,25 @@ public class Controller
 	{
 		return controllerData;
 	}
+
+	/**
+	 * Sets the controller data describing this controller
+	 * @param controllerData
+	 */
+	public void setData(ControllerData controllerData)
+	{
+		this.controllerData = controllerData;
+	}
+
+	/**
+	 * Creates a shallow copy of this controller, sharing its data
+	 * 
+	 * @return the copy
+	 */
+	public Controller copy()
+	{
+		Controller copy = new Controller();
+		copy.controllerData = this.controllerData;
+		return copy;
+	}
 }
@@ -222,4 +222,26 @@ public class ControllerData
 		return controllerState;
 	}
 
+	/**
+	 * Creates a shallow copy of this element: the copy shares the nested data
+	 * elements, but not the map holding them, therefore it can be modified
+	 * without affecting this element.
+	 * 
+	 * @return the copy
+	 */
+	public ControllerData copy()
+	{
+		return new ControllerData(this);
+	}
+
+	// the copy constructor
+	private ControllerData(ControllerData other)
+	{
+		this.updateTime = other.updateTime;
+		this.name = other.name;
+		this.value = other.value;
+		this.type = other.type;
+		this.invalidateTime = other.invalidateTime;
+		this.data.putAll(other.data);
+	}
 }
@@ -17,25 +17,49 @@
  */
 package it.polito.elite.dog.drivers.zwave.model.zway.json;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 
 
+/**
+ * A data element of the Z-Way model tree. Data elements are by far the most
+ * numerous objects of the tree, therefore they are kept compact: leaves share
+ * a single empty map, elements with few children keep them in a
+ * {@link SmallDataMap}, numeric and boolean values are kept in a primitive
+ * slot, and names and types share the strings of the parser.
+ */
 public class DataElemObject 
 {
+	// the map shared by all the elements without children
+	private static final Map<String, DataElemObject> NO_DATA = Collections.emptyMap();
+
+	// the kinds of value: any object, or a primitive kept in the value bits
+	static final byte OBJECT_VALUE = 0;
+	static final byte INT_VALUE = 1;
+	static final byte LONG_VALUE = 2;
+	static final byte DOUBLE_VALUE = 3;
+	static final byte BOOLEAN_VALUE = 4;
+
 	private long updateTime;
 	private String name;
-	private Object value;
 	private String type;
 	private long invalidateTime;
 	
-	private Map<String, DataElemObject> data = new HashMap<String, DataElemObject>(); 
+	// the value, either an object or a primitive kept in the value bits
+	private byte valueKind;
+	private Object value;
+	private long valueBits;
+	
+	// the children: none, few (small map) or many (hash map)
+	private Map<String, DataElemObject> data = NO_DATA; 
 	
 	@JsonCreator
     public DataElemObject(@JsonProperty("updateTime") Integer updateTime,
@@ -47,12 +71,44 @@ public class DataElemObject
     {
 		this.updateTime = updateTime;
 		this.name = name;
-		this.value = value;
-		this.type = type;
+		this.setValue(value);
+		this.type = DataElemObject.canonicalType(type);
 		this.invalidateTime = invalidateTime;
     }
 	
+	/**
+	 * Creates an element from its fields as read by the
+	 * {@link ZWaveModelReader}, without boxing times and primitive values
+	 * 
+	 * @param updateTime
+	 * @param name
+	 * @param type
+	 * @param invalidateTime
+	 * @param valueKind
+	 *            the kind of value, {@link #OBJECT_VALUE} or a primitive
+	 * @param valueBits
+	 *            the bits of a primitive value
+	 * @param value
+	 *            the value, if not primitive
+	 */
+	DataElemObject(long updateTime, String name, String type, long invalidateTime,
+			byte valueKind, long valueBits, Object value)
+	{
+		this.updateTime = updateTime;
+		this.name = name;
+		this.type = DataElemObject.canonicalType(type);
+		this.invalidateTime = invalidateTime;
+		this.valueKind = valueKind;
+		this.valueBits = valueBits;
+		this.value = value;
+	}
+	
 	// "any getter" needed for serialization    
+    /**
+     * Gets the children of this element, the map is read-only for elements
+     * without children: use {@link #setAllData(String, DataElemObject)} to add
+     * children
+     */
     @JsonAnyGetter
     public Map<String,DataElemObject> getAllData() {
         return data;
@@ -60,6 +116,15 @@ public class DataElemObject
 
     @JsonAnySetter
     public void setAllData(String name, DataElemObject value) {
+    	if (data == NO_DATA)
+    		data = new SmallDataMap();
+    	else if ((data instanceof SmallDataMap) && (data.size() >= SmallDataMap.MAX_SIZE) && (!data.containsKey(name)))
+    		data = new HashMap<String, DataElemObject>(data);
+    	
+    	// the child name is usually the key, share the key string
+    	if ((value != null) && (name.equals(value.name)))
+    		value.name = name;
+    	
     	data.put(name, value);
     }
     
@@ -131,14 +196,92 @@ public class DataElemObject
 	 * @return the value
 	 */
 	public Object getValue() {
-		return value;
+		switch (this.valueKind)
+		{
+			case INT_VALUE:
+				return Integer.valueOf((int) this.valueBits);
+			case LONG_VALUE:
+				return Long.valueOf(this.valueBits);
+			case DOUBLE_VALUE:
+				return Double.valueOf(Double.longBitsToDouble(this.valueBits));
+			case BOOLEAN_VALUE:
+				return Boolean.valueOf(this.valueBits != 0);
+			default:
+				return this.value;
+		}
+	}
+
+	/**
+	 * Gets the value as a double, without boxing numeric values
+	 * 
+	 * @return the value as double, 1 or 0 for booleans, or {@link Double#NaN}
+	 *         if the value is not numeric
+	 */
+	@JsonIgnore
+	public double getValueAsDouble() {
+		switch (this.valueKind)
+		{
+			case INT_VALUE:
+			case LONG_VALUE:
+				return this.valueBits;
+			case DOUBLE_VALUE:
+				return Double.longBitsToDouble(this.valueBits);
+			case BOOLEAN_VALUE:
+				return this.valueBits;
+			default:
+			{
+				if (this.value instanceof Number)
+					return ((Number) this.value).doubleValue();
+				else if (this.value instanceof String)
+				{
+					try
+					{
+						return Double.parseDouble((String) this.value);
+					}
+					catch (NumberFormatException e)
+					{
+						// not a number
+					}
+				}
+				return Double.NaN;
+			}
+		}
 	}
 
 	/**
 	 * @param value the value to set
 	 */
 	public void setValue(Object value) {
-		this.value = value;
+		this.value = null;
+		this.valueBits = 0;
+		
+		// the wrapper classes produced by the parser are kept as primitives,
+		// other numbers (e.g., big integers) keep their class
+		if (value instanceof Integer)
+		{
+			this.valueKind = INT_VALUE;
+			this.valueBits = ((Integer) value).intValue();
+		}
+		else if (value instanceof Long)
+		{
+			this.valueKind = LONG_VALUE;
+			this.valueBits = ((Long) value).longValue();
+		}
+		else if (value instanceof Double)
+		{
+			this.valueKind = DOUBLE_VALUE;
+			this.valueBits = Double.doubleToRawLongBits(((Double) value).doubleValue());
+		}
+		else if (value instanceof Boolean)
+		{
+			this.valueKind = BOOLEAN_VALUE;
+			this.valueBits = ((Boolean) value).booleanValue() ? 1 : 0;
+		}
+		else
+		{
+			this.valueKind = OBJECT_VALUE;
+			this.value = value;
+		}
 	}
 
 	/**
@@ -152,7 +295,44 @@ public class DataElemObject
 	 * @param type the type to set
 	 */
 	public void setType(String type) {
-		this.type = type;
+		this.type = DataElemObject.canonicalType(type);
+	}
+
+	/**
+	 * Maps the Z-Way data types to constant strings, so that the elements of
+	 * the same type share the same string
+	 * 
+	 * @param type
+	 * @return the canonical type
+	 */
+	private static String canonicalType(String type)
+	{
+		if (type == null)
+			return null;
+		
+		switch (type)
+		{
+			case "empty":
+				return "empty";
+			case "bool":
+				return "bool";
+			case "int":
+				return "int";
+			case "float":
+				return "float";
+			case "string":
+				return "string";
+			case "binary":
+				return "binary";
+			case "intArray":
+				return "intArray";
+			case "floatArray":
+				return "floatArray";
+			case "stringArray":
+				return "stringArray";
+			default:
+				return type;
+		}
 	}
 
 	/**
@@ -168,4 +348,33 @@ public class DataElemObject
 	public void setInvalidateTime(Integer invalidateTime) {
 		this.invalidateTime = invalidateTime;
 	}
+
+	/**
+	 * Creates a shallow copy of this element: the copy shares the nested data
+	 * elements, but not the map holding them, therefore it can be modified
+	 * without affecting this element.
+	 * 
+	 * @return the copy
+	 */
+	public DataElemObject copy()
+	{
+		return new DataElemObject(this);
+	}
+
+	// the copy constructor
+	private DataElemObject(DataElemObject other)
+	{
+		this.updateTime = other.updateTime;
+		this.name = other.name;
+		this.valueKind = other.valueKind;
+		this.value = other.value;
+		this.valueBits = other.valueBits;
+		this.type = other.type;
+		this.invalidateTime = other.invalidateTime;
+		
+		if (other.data instanceof SmallDataMap)
+			this.data = new SmallDataMap((SmallDataMap) other.data);
+		else if (other.data != NO_DATA)
+			this.data = new HashMap<String, DataElemObject>(other.data);
+	}
 }
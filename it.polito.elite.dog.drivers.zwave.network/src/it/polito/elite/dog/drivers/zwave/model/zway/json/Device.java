@@ -19,6 +19,7 @@ package it.polito.elite.dog.drivers.zwave.model.zway.json;
 
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -227,4 +228,24 @@ public class Device
 	{
 		return hasCommandClass(ZWaveRawCommandClass.COMMAND_CLASS_BATTERY);
 	}
+
+	/**
+	 * Creates a shallow copy of this device: the copy shares the data and the
+	 * instances, but not the map holding them, therefore it can be modified
+	 * without affecting this device.
+	 * 
+	 * @return the copy
+	 */
+	public Device copy()
+	{
+		return new Device(this);
+	}
+
+	// the copy constructor
+	private Device(Device other)
+	{
+		this.data = other.data;
+		if (other.instances != null)
+			this.instances = new HashMap<Integer, Instance>(other.instances);
+	}
 }
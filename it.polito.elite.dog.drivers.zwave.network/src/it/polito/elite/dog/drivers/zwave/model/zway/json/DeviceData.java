@@ -143,4 +143,27 @@ public class DeviceData
 	public void setInvalidateTime(Integer invalidateTime) {
 		this.invalidateTime = invalidateTime;
 	}
+
+	/**
+	 * Creates a shallow copy of this element: the copy shares the nested data
+	 * elements, but not the map holding them, therefore it can be modified
+	 * without affecting this element.
+	 * 
+	 * @return the copy
+	 */
+	public DeviceData copy()
+	{
+		return new DeviceData(this);
+	}
+
+	// the copy constructor
+	private DeviceData(DeviceData other)
+	{
+		this.updateTime = other.updateTime;
+		this.name = other.name;
+		this.value = other.value;
+		this.type = other.type;
+		this.invalidateTime = other.invalidateTime;
+		this.data.putAll(other.data);
+	}
 }
@@ -26,4 +26,24 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 public class GetSetEntry {
 	@JsonProperty("label") private String label;
 	@JsonProperty("type") private Map<String, Object> type;
+
+	public String getLabel()
+	{
+		return label;
+	}
+
+	public void setLabel(String label)
+	{
+		this.label = label;
+	}
+
+	public Map<String, Object> getType()
+	{
+		return type;
+	}
+
+	public void setType(Map<String, Object> type)
+	{
+		this.type = type;
+	}
 }
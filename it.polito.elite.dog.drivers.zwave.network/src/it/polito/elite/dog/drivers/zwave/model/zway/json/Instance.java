@@ -17,6 +17,7 @@
  */
 package it.polito.elite.dog.drivers.zwave.model.zway.json;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -71,4 +72,21 @@ public class Instance
 	{
 		this.data = data;
 	}
+
+	/**
+	 * Creates a shallow copy of this instance: the copy shares the data and
+	 * the command classes, but not the map holding them, therefore it can be
+	 * modified without affecting this instance.
+	 * 
+	 * @return the copy
+	 */
+	public Instance copy()
+	{
+		Instance copy = new Instance();
+		copy.instanceId = this.instanceId;
+		copy.data = this.data;
+		if (this.commandClasses != null)
+			copy.commandClasses = new HashMap<Integer, CommandClasses>(this.commandClasses);
+		return copy;
+	}
 }
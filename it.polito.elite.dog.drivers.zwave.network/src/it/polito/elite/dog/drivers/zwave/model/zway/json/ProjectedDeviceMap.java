@@ -0,0 +1,277 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.model.zway.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.InflaterInputStream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
+
+/**
+ * The devices of a projected model tree: devices in the projection are kept
+ * as {@link Device}s, the others as raw (deflated) json, parsed the first time they are
+ * read and then kept. All the node ids are always known, so that the map can
+ * be scanned (e.g., by discovery) without building any device.
+ *
+ * Published trees are read concurrently: building a raw device is
+ * synchronized on the raw device itself, which is shared by the copies of the
+ * map, while the map is only modified by the update owning it.
+ */
+class ProjectedDeviceMap extends AbstractMap<Integer, Device>
+{
+	// the devices, either Device or RawDevice
+	private final LinkedHashMap<Integer, Object> devices;
+
+	// the entry set view, created on demand
+	private Set<Map.Entry<Integer, Device>> entrySet;
+
+	/**
+	 * Creates an empty map
+	 */
+	ProjectedDeviceMap()
+	{
+		this.devices = new LinkedHashMap<Integer, Object>();
+	}
+
+	/**
+	 * Creates a copy of the given map, sharing its devices
+	 *
+	 * @param other
+	 */
+	private ProjectedDeviceMap(ProjectedDeviceMap other)
+	{
+		this.devices = new LinkedHashMap<Integer, Object>(other.devices);
+	}
+
+	/**
+	 * @return a copy of this map, sharing the devices, raw or not
+	 */
+	ProjectedDeviceMap copy()
+	{
+		return new ProjectedDeviceMap(this);
+	}
+
+	/**
+	 * Adds a device in raw form
+	 *
+	 * @param nodeId
+	 *            the device node id
+	 * @param json
+	 *            the device json, deflated
+	 * @param codec
+	 *            the codec building the device when first read
+	 */
+	void putRaw(Integer nodeId, byte[] json, ObjectCodec codec)
+	{
+		this.devices.put(nodeId, new RawDevice(json, codec));
+	}
+
+	@Override
+	public Device get(Object key)
+	{
+		return ProjectedDeviceMap.toDevice(this.devices.get(key));
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return this.devices.containsKey(key);
+	}
+
+	@Override
+	public Device put(Integer key, Device value)
+	{
+		return ProjectedDeviceMap.toDevice(this.devices.put(key, value));
+	}
+
+	@Override
+	public Device remove(Object key)
+	{
+		return ProjectedDeviceMap.toDevice(this.devices.remove(key));
+	}
+
+	@Override
+	public void clear()
+	{
+		this.devices.clear();
+	}
+
+	@Override
+	public int size()
+	{
+		return this.devices.size();
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, Device>> entrySet()
+	{
+		if (this.entrySet == null)
+		{
+			this.entrySet = new AbstractSet<Map.Entry<Integer, Device>>()
+			{
+				@Override
+				public Iterator<Map.Entry<Integer, Device>> iterator()
+				{
+					final Iterator<Map.Entry<Integer, Object>> iterator = devices.entrySet().iterator();
+					return new Iterator<Map.Entry<Integer, Device>>()
+					{
+						@Override
+						public boolean hasNext()
+						{
+							return iterator.hasNext();
+						}
+
+						@Override
+						public Map.Entry<Integer, Device> next()
+						{
+							return new Entry(iterator.next());
+						}
+
+						@Override
+						public void remove()
+						{
+							iterator.remove();
+						}
+					};
+				}
+
+				@Override
+				public int size()
+				{
+					return devices.size();
+				}
+			};
+		}
+
+		return this.entrySet;
+	}
+
+	/**
+	 * @param device
+	 *            a Device, a RawDevice or null
+	 * @return the device, built if raw
+	 */
+	private static Device toDevice(Object device)
+	{
+		return (device instanceof RawDevice) ? ((RawDevice) device).getDevice() : (Device) device;
+	}
+
+	/**
+	 * A map entry, building the device only when its value is read
+	 */
+	private static class Entry implements Map.Entry<Integer, Device>
+	{
+		private final Map.Entry<Integer, Object> entry;
+
+		private Entry(Map.Entry<Integer, Object> entry)
+		{
+			this.entry = entry;
+		}
+
+		@Override
+		public Integer getKey()
+		{
+			return this.entry.getKey();
+		}
+
+		@Override
+		public Device getValue()
+		{
+			return ProjectedDeviceMap.toDevice(this.entry.getValue());
+		}
+
+		@Override
+		public Device setValue(Device value)
+		{
+			return ProjectedDeviceMap.toDevice(this.entry.setValue(value));
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Map.Entry))
+				return false;
+
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+			return this.getKey().equals(other.getKey())
+					&& ((this.getValue() == null) ? (other.getValue() == null)
+							: this.getValue().equals(other.getValue()));
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return this.getKey().hashCode()
+					^ ((this.getValue() == null) ? 0 : this.getValue().hashCode());
+		}
+	}
+
+	/**
+	 * A device kept as json until first read
+	 */
+	private static class RawDevice
+	{
+		// the deflated device json, released once the device is built
+		private byte[] json;
+
+		// the codec building the device
+		private ObjectCodec codec;
+
+		// the device, once built
+		private Device device;
+
+		public RawDevice(byte[] json, ObjectCodec codec)
+		{
+			this.json = json;
+			this.codec = codec;
+		}
+
+		/**
+		 * @return the device, built on the first call
+		 */
+		public synchronized Device getDevice()
+		{
+			if (this.json != null)
+			{
+				try (JsonParser parser = this.codec.getFactory()
+						.createParser(new InflaterInputStream(new ByteArrayInputStream(this.json))))
+				{
+					this.device = this.codec.readValue(parser, Device.class);
+				}
+				catch (IOException e)
+				{
+					// the json has been written by the projection itself
+					throw new IllegalStateException("Unable to build a projected device", e);
+				}
+
+				this.json = null;
+				this.codec = null;
+			}
+
+			return this.device;
+		}
+	}
+}
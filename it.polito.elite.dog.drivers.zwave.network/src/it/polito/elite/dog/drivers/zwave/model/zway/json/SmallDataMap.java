@@ -0,0 +1,289 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.model.zway.json;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map of few data elements, kept in two parallel arrays and searched
+ * linearly: for the handful of children of most data elements it takes a
+ * fraction of the memory of a {@link java.util.HashMap}, and it is as fast.
+ * Keys are compared by identity first, as they are usually interned by the
+ * JSON parser.
+ */
+class SmallDataMap extends AbstractMap<String, DataElemObject>
+{
+	// the maximum size worth keeping in arrays, larger maps should be hashed
+	static final int MAX_SIZE = 8;
+
+	// the keys and values, the first size slots are used
+	private String[] keys;
+	private DataElemObject[] values;
+	private int size = 0;
+
+	// the entry set view, created on demand
+	private Set<Map.Entry<String, DataElemObject>> entrySet;
+
+	/**
+	 * Creates an empty map
+	 */
+	SmallDataMap()
+	{
+		this.keys = new String[2];
+		this.values = new DataElemObject[2];
+	}
+
+	/**
+	 * Creates a copy of the given map
+	 *
+	 * @param other
+	 */
+	SmallDataMap(SmallDataMap other)
+	{
+		this.keys = Arrays.copyOf(other.keys, Math.max(other.size, 1));
+		this.values = Arrays.copyOf(other.values, Math.max(other.size, 1));
+		this.size = other.size;
+	}
+
+	/**
+	 * @param key
+	 * @return the index of the given key, or -1
+	 */
+	private int indexOf(Object key)
+	{
+		for (int i = 0; i < this.size; i++)
+		{
+			if (this.keys[i] == key)
+				return i;
+		}
+
+		if (key != null)
+		{
+			for (int i = 0; i < this.size; i++)
+			{
+				if (key.equals(this.keys[i]))
+					return i;
+			}
+		}
+
+		return -1;
+	}
+
+	@Override
+	public DataElemObject get(Object key)
+	{
+		int i = this.indexOf(key);
+		return (i >= 0) ? this.values[i] : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return this.indexOf(key) >= 0;
+	}
+
+	@Override
+	public DataElemObject put(String key, DataElemObject value)
+	{
+		int i = this.indexOf(key);
+		if (i >= 0)
+		{
+			DataElemObject previous = this.values[i];
+			this.values[i] = value;
+			return previous;
+		}
+
+		if (this.size == this.keys.length)
+		{
+			this.keys = Arrays.copyOf(this.keys, this.size * 2);
+			this.values = Arrays.copyOf(this.values, this.size * 2);
+		}
+
+		this.keys[this.size] = key;
+		this.values[this.size] = value;
+		this.size++;
+		return null;
+	}
+
+	@Override
+	public DataElemObject remove(Object key)
+	{
+		int i = this.indexOf(key);
+		if (i < 0)
+			return null;
+
+		DataElemObject previous = this.values[i];
+		this.removeAt(i);
+		return previous;
+	}
+
+	/**
+	 * Removes the entry at the given index, keeping the order of the others
+	 *
+	 * @param i
+	 */
+	private void removeAt(int i)
+	{
+		int moved = this.size - i - 1;
+		if (moved > 0)
+		{
+			System.arraycopy(this.keys, i + 1, this.keys, i, moved);
+			System.arraycopy(this.values, i + 1, this.values, i, moved);
+		}
+
+		this.size--;
+		this.keys[this.size] = null;
+		this.values[this.size] = null;
+	}
+
+	@Override
+	public void clear()
+	{
+		Arrays.fill(this.keys, 0, this.size, null);
+		Arrays.fill(this.values, 0, this.size, null);
+		this.size = 0;
+	}
+
+	@Override
+	public int size()
+	{
+		return this.size;
+	}
+
+	@Override
+	public Set<Map.Entry<String, DataElemObject>> entrySet()
+	{
+		if (this.entrySet == null)
+		{
+			this.entrySet = new AbstractSet<Map.Entry<String, DataElemObject>>()
+			{
+				@Override
+				public Iterator<Map.Entry<String, DataElemObject>> iterator()
+				{
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size()
+				{
+					return size;
+				}
+			};
+		}
+
+		return this.entrySet;
+	}
+
+	/**
+	 * The iterator over the map entries
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<String, DataElemObject>>
+	{
+		// the index of the next entry
+		private int next = 0;
+
+		// the index of the last returned entry, -1 if none or removed
+		private int last = -1;
+
+		@Override
+		public boolean hasNext()
+		{
+			return this.next < size;
+		}
+
+		@Override
+		public Map.Entry<String, DataElemObject> next()
+		{
+			if (this.next >= size)
+				throw new NoSuchElementException();
+
+			this.last = this.next++;
+			return new Entry(this.last);
+		}
+
+		@Override
+		public void remove()
+		{
+			if (this.last < 0)
+				throw new IllegalStateException();
+
+			removeAt(this.last);
+			this.next = this.last;
+			this.last = -1;
+		}
+	}
+
+	/**
+	 * A map entry, writing through to the map
+	 */
+	private class Entry implements Map.Entry<String, DataElemObject>
+	{
+		// the entry index
+		private final int index;
+
+		private Entry(int index)
+		{
+			this.index = index;
+		}
+
+		@Override
+		public String getKey()
+		{
+			return keys[this.index];
+		}
+
+		@Override
+		public DataElemObject getValue()
+		{
+			return values[this.index];
+		}
+
+		@Override
+		public DataElemObject setValue(DataElemObject value)
+		{
+			DataElemObject previous = values[this.index];
+			values[this.index] = value;
+			return previous;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Map.Entry))
+				return false;
+
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+			return this.getKey().equals(other.getKey())
+					&& ((this.getValue() == null) ? (other.getValue() == null)
+							: this.getValue().equals(other.getValue()));
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return this.getKey().hashCode()
+					^ ((this.getValue() == null) ? 0 : this.getValue().hashCode());
+		}
+	}
+}
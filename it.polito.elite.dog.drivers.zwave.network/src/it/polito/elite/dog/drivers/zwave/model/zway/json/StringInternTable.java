@@ -0,0 +1,146 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.model.zway.json;
+
+/**
+ * A bounded table of canonical strings, for the short tokens repeated all
+ * over the Z-Way model (units, scale and sensor type names, and the like).
+ * Strings are looked up directly in the characters of the parser, so that a
+ * token already in the table is returned without allocating anything.
+ *
+ * The table never grows: strings longer than {@link #MAX_LENGTH}, or not
+ * fitting in their slots, are simply not canonicalized. Lookups and
+ * insertions are lock-free, a lost insertion only costs a future miss.
+ */
+class StringInternTable
+{
+	// the longest string worth canonicalizing
+	static final int MAX_LENGTH = 32;
+
+	// the number of slots, a power of two
+	private static final int CAPACITY = 4096;
+
+	// the number of slots tried for each string
+	private static final int MAX_PROBES = 4;
+
+	// the canonical strings, an empty slot is null
+	private final String[] slots = new String[CAPACITY];
+
+	/**
+	 * Returns the canonical string with the given characters
+	 *
+	 * @param chars
+	 *            the characters buffer
+	 * @param offset
+	 *            the offset of the first character
+	 * @param length
+	 *            the number of characters
+	 * @return the canonical string, or a new string if it cannot be
+	 *         canonicalized
+	 */
+	public String intern(char[] chars, int offset, int length)
+	{
+		if (length > MAX_LENGTH)
+			return new String(chars, offset, length);
+
+		// same hash as String.hashCode()
+		int hash = 0;
+		for (int i = 0; i < length; i++)
+			hash = 31 * hash + chars[offset + i];
+
+		int index = StringInternTable.spread(hash);
+		for (int probe = 0; probe < MAX_PROBES; probe++)
+		{
+			int slot = (index + probe) & (CAPACITY - 1);
+			String candidate = this.slots[slot];
+			if (candidate == null)
+			{
+				String string = new String(chars, offset, length);
+				this.slots[slot] = string;
+				return string;
+			}
+			if (StringInternTable.matches(candidate, chars, offset, length))
+				return candidate;
+		}
+
+		// the slots are taken
+		return new String(chars, offset, length);
+	}
+
+	/**
+	 * Returns the canonical string equal to the given one
+	 *
+	 * @param string
+	 * @return the canonical string, or the given one if it cannot be
+	 *         canonicalized
+	 */
+	public String intern(String string)
+	{
+		if ((string == null) || (string.length() > MAX_LENGTH))
+			return string;
+
+		int index = StringInternTable.spread(string.hashCode());
+		for (int probe = 0; probe < MAX_PROBES; probe++)
+		{
+			int slot = (index + probe) & (CAPACITY - 1);
+			String candidate = this.slots[slot];
+			if (candidate == null)
+			{
+				this.slots[slot] = string;
+				return string;
+			}
+			if (candidate.equals(string))
+				return candidate;
+		}
+
+		return string;
+	}
+
+	/**
+	 * Mixes the high bits of a hash into the low ones, used as index
+	 *
+	 * @param hash
+	 * @return the spread hash
+	 */
+	private static int spread(int hash)
+	{
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * @param candidate
+	 * @param chars
+	 * @param offset
+	 * @param length
+	 * @return true if the candidate string has the given characters
+	 */
+	private static boolean matches(String candidate, char[] chars, int offset,
+			int length)
+	{
+		if (candidate.length() != length)
+			return false;
+
+		for (int i = 0; i < length; i++)
+		{
+			if (candidate.charAt(i) != chars[offset + i])
+				return false;
+		}
+
+		return true;
+	}
+}
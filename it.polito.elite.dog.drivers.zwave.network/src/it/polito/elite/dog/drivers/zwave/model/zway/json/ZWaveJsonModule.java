@@ -0,0 +1,300 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.model.zway.json;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * The Jackson module for the Z-Way model tree. Every parse of the Z-Way
+ * server answer yields the same few tokens over and over (units such as "W"
+ * or "Celsius", scale and sensor type names, the numeric ids of instances and
+ * command classes): the deserializers of this module return canonical
+ * instances of them, from a bounded table, instead of allocating new ones on
+ * each parse. Field names need no help, they are already canonicalized by the
+ * symbol table of the Jackson parser.
+ *
+ * The model classes themselves are read by a {@link ZWaveModelReader},
+ * straight from the parser tokens, rather than by the Jackson databind.
+ *
+ * Given a {@link ZWaveModelProjection}, the module also restricts the model
+ * tree to the projection: the devices not in the projection are kept in raw
+ * form until first read, the areas and the configGet, configSet, userGet and
+ * userSet sections of command classes are skipped.
+ */
+public class ZWaveJsonModule extends SimpleModule
+{
+	private static final long serialVersionUID = 1L;
+
+	// the largest id with a cached Integer, covers node, instance and command
+	// class ids
+	private static final int MAX_CACHED_ID = 1023;
+
+	// the cached Integer ids
+	private static final Integer[] IDS = new Integer[MAX_CACHED_ID + 1];
+
+	static
+	{
+		for (int i = 0; i < IDS.length; i++)
+			IDS[i] = Integer.valueOf(i);
+	}
+
+	/**
+	 * Creates the module, with its own table of canonical strings
+	 */
+	public ZWaveJsonModule()
+	{
+		this(null);
+	}
+
+	/**
+	 * Creates the module, with its own table of canonical strings
+	 *
+	 * @param projection
+	 *            the part of the model tree to build while parsing, null for
+	 *            the whole tree
+	 */
+	public ZWaveJsonModule(ZWaveModelProjection projection)
+	{
+		super("ZWaveJsonModule");
+
+		StringInternTable strings = new StringInternTable();
+		this.addDeserializer(String.class, new CanonicalStringDeserializer(strings));
+		this.addDeserializer(Object.class, new CanonicalObjectDeserializer(strings));
+		this.addKeyDeserializer(Integer.class, new IdKeyDeserializer());
+
+		// the model classes
+		this.addModelDeserializer(ZWaveModelTree.class, strings, projection);
+		this.addModelDeserializer(Controller.class, strings, projection);
+		this.addModelDeserializer(ControllerData.class, strings, projection);
+		this.addModelDeserializer(Device.class, strings, projection);
+		this.addModelDeserializer(DeviceData.class, strings, projection);
+		this.addModelDeserializer(Instance.class, strings, projection);
+		this.addModelDeserializer(InstanceData.class, strings, projection);
+		this.addModelDeserializer(CommandClasses.class, strings, projection);
+		this.addModelDeserializer(CommandClassesData.class, strings, projection);
+		this.addModelDeserializer(DataElemObject.class, strings, projection);
+	}
+
+	/**
+	 * Registers the {@link ModelDeserializer} of the given model class
+	 *
+	 * @param type
+	 * @param strings
+	 * @param projection
+	 */
+	private <T> void addModelDeserializer(Class<T> type, StringInternTable strings,
+			ZWaveModelProjection projection)
+	{
+		this.addDeserializer(type, new ModelDeserializer<T>(type, strings, projection));
+	}
+
+	/**
+	 * @return a new mapper for the Z-Way model tree, with this module
+	 *         registered
+	 */
+	public static ObjectMapper createMapper()
+	{
+		return ZWaveJsonModule.createMapper(null);
+	}
+
+	/**
+	 * @param projection
+	 *            the part of the model tree to build while parsing, null for
+	 *            the whole tree
+	 * @return a new mapper for the Z-Way model tree, with this module
+	 *         registered
+	 */
+	public static ObjectMapper createMapper(ZWaveModelProjection projection)
+	{
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new ZWaveJsonModule(projection));
+		return mapper;
+	}
+
+	/**
+	 * @param id
+	 * @return the canonical Integer instance of the given id
+	 */
+	static Integer toId(int id)
+	{
+		return ((id >= 0) && (id <= MAX_CACHED_ID)) ? IDS[id] : Integer.valueOf(id);
+	}
+
+	/**
+	 * Returns the canonical string of the current token
+	 *
+	 * @param strings
+	 * @param p
+	 * @return the canonical string
+	 * @throws IOException
+	 */
+	static String canonicalText(StringInternTable strings, JsonParser p)
+			throws IOException
+	{
+		// only look at the parser buffer if the string is short enough
+		int length = p.getTextLength();
+		if (length > StringInternTable.MAX_LENGTH)
+			return p.getText();
+
+		return strings.intern(p.getTextCharacters(), p.getTextOffset(), length);
+	}
+
+	/**
+	 * The deserializer of String values
+	 */
+	private static class CanonicalStringDeserializer extends StdScalarDeserializer<String>
+	{
+		private static final long serialVersionUID = 1L;
+
+		// the canonical strings
+		private final transient StringInternTable strings;
+
+		public CanonicalStringDeserializer(StringInternTable strings)
+		{
+			super(String.class);
+			this.strings = strings;
+		}
+
+		@Override
+		public String deserialize(JsonParser p, DeserializationContext ctxt)
+				throws IOException
+		{
+			if (p.hasToken(JsonToken.VALUE_STRING))
+				return ZWaveJsonModule.canonicalText(this.strings, p);
+
+			// numbers, embedded objects and the like, as usual
+			return StringDeserializer.instance.deserialize(p, ctxt);
+		}
+	}
+
+	/**
+	 * The deserializer of untyped values (e.g., the values of data elements
+	 * and the userGet/userSet maps), building the same objects of the Jackson
+	 * untyped deserializer: maps, lists, strings, numbers and booleans.
+	 */
+	private static class CanonicalObjectDeserializer extends StdDeserializer<Object>
+	{
+		private static final long serialVersionUID = 1L;
+
+		// the canonical strings
+		private final transient StringInternTable strings;
+
+		public CanonicalObjectDeserializer(StringInternTable strings)
+		{
+			super(Object.class);
+			this.strings = strings;
+		}
+
+		@Override
+		public Object deserialize(JsonParser p, DeserializationContext ctxt)
+				throws IOException
+		{
+			return new ZWaveModelReader(p, ctxt, this.strings, null).readUntyped(p.currentToken());
+		}
+	}
+
+	/**
+	 * The deserializer of a class of the Z-Way model, reading it with a
+	 * {@link ZWaveModelReader}
+	 */
+	private static class ModelDeserializer<T> extends StdDeserializer<T>
+	{
+		private static final long serialVersionUID = 1L;
+
+		// the model class
+		private final Class<T> type;
+
+		// the canonical strings
+		private final transient StringInternTable strings;
+
+		// the devices to build while reading a tree, null for all
+		private final transient ZWaveModelProjection projection;
+
+		public ModelDeserializer(Class<T> type, StringInternTable strings,
+				ZWaveModelProjection projection)
+		{
+			super(type);
+			this.type = type;
+			this.strings = strings;
+			this.projection = projection;
+		}
+
+		@Override
+		public T deserialize(JsonParser p, DeserializationContext ctxt)
+				throws IOException
+		{
+			ZWaveModelReader reader = new ZWaveModelReader(p, ctxt, this.strings, this.projection);
+
+			Object model;
+			if (this.type == ZWaveModelTree.class)
+				model = reader.readTree();
+			else if (this.type == Controller.class)
+				model = reader.readController();
+			else if (this.type == ControllerData.class)
+				model = reader.readControllerData();
+			else if (this.type == Device.class)
+				model = reader.readDevice();
+			else if (this.type == DeviceData.class)
+				model = reader.readDeviceData();
+			else if (this.type == Instance.class)
+				model = reader.readInstance();
+			else if (this.type == InstanceData.class)
+				model = reader.readInstanceData();
+			else if (this.type == CommandClasses.class)
+				model = reader.readCommandClass();
+			else if (this.type == CommandClassesData.class)
+				model = reader.readCommandClassesData();
+			else
+				model = reader.readDataElem();
+
+			return this.type.cast(model);
+		}
+	}
+
+	/**
+	 * The deserializer of Integer map keys, i.e., of the ids of devices,
+	 * instances and command classes
+	 */
+	private static class IdKeyDeserializer extends KeyDeserializer
+	{
+		@Override
+		public Object deserializeKey(String key, DeserializationContext ctxt)
+				throws IOException
+		{
+			try
+			{
+				return ZWaveJsonModule.toId(Integer.parseInt(key));
+			}
+			catch (NumberFormatException e)
+			{
+				return ctxt.handleWeirdKey(Integer.class, key,
+						"not a valid Integer value");
+			}
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.model.zway.json;
+
+/**
+ * The part of the Z-Way model tree actually needed, e.g., by the registered
+ * drivers. When a projection is given to the {@link ZWaveJsonModule}, the
+ * devices not in the projection are kept in raw form and built only when
+ * first accessed, the areas and the configGet, configSet, userGet and userSet
+ * sections of command classes are skipped altogether.
+ */
+public interface ZWaveModelProjection
+{
+	/**
+	 * Tells whether the given device must be built while parsing the model
+	 * tree, rather than when first accessed. Called while parsing, therefore
+	 * it must be fast and thread-safe.
+	 *
+	 * @param nodeId
+	 *            the device node id
+	 * @return true if the device is in the projection
+	 */
+	public boolean includesDevice(int nodeId);
+}
@@ -0,0 +1,912 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.model.zway.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+
+/**
+ * Reads the Z-Way model tree, or any of its elements, directly from the
+ * tokens of a {@link JsonParser}, building the same objects of the annotated
+ * model classes (maps are ordered as in the json, as the Jackson databind
+ * builds them) without the reflection and the boxing of the Jackson
+ * databind: fields are dispatched by name, times and primitive values of data
+ * elements are never boxed, the children of data elements are collected on a
+ * stack shared by the whole read, and strings are canonicalized.
+ *
+ * A reader is created for each read and used by a single thread. Areas,
+ * which are not used by drivers, are left to the databind.
+ */
+class ZWaveModelReader
+{
+	// the field names of the Z-Way model
+	private static final String AREAS = "areas";
+	private static final String CONTROLLER = "controller";
+	private static final String DEVICES = "devices";
+	private static final String INSTANCES = "instances";
+	private static final String COMMAND_CLASSES = "commandClasses";
+	private static final String DATA = "data";
+	private static final String UPDATE_TIME = "updateTime";
+	private static final String INVALIDATE_TIME = "invalidateTime";
+	private static final String NAME = "name";
+	private static final String VALUE = "value";
+	private static final String TYPE = "type";
+	private static final String LABEL = "label";
+	private static final String USER_GET = "userGet";
+	private static final String USER_SET = "userSet";
+	private static final String CONFIG_GET = "configGet";
+	private static final String CONFIG_SET = "configSet";
+
+	// the factory of the raw device generators
+	private static final JsonFactory RAW_FACTORY = new JsonFactory();
+
+	// the parser and the context of the read
+	private final JsonParser p;
+	private final DeserializationContext ctxt;
+
+	// the canonical strings
+	private final StringInternTable strings;
+
+	// the devices to build while reading a tree, null for all
+	private final ZWaveModelProjection projection;
+
+	// the children of the data elements being read, the children of an
+	// element are on top of those of its ancestors
+	private String[] childNames;
+	private DataElemObject[] children;
+	private int top = 0;
+
+	/**
+	 * Creates a reader
+	 *
+	 * @param p
+	 *            the parser, on the first token to read
+	 * @param ctxt
+	 *            the deserialization context
+	 * @param strings
+	 *            the canonical strings
+	 * @param projection
+	 *            the devices to build while reading a tree, null for all: the
+	 *            unused sections of command classes are skipped as well
+	 */
+	ZWaveModelReader(JsonParser p, DeserializationContext ctxt,
+			StringInternTable strings, ZWaveModelProjection projection)
+	{
+		this.p = p;
+		this.ctxt = ctxt;
+		this.strings = strings;
+		this.projection = projection;
+	}
+
+	/**
+	 * @return the model tree
+	 * @throws IOException
+	 */
+	public ZWaveModelTree readTree() throws IOException
+	{
+		Areas areas = null;
+		Controller controller = null;
+		Map<Integer, Device> devices = null;
+		long updateTime = 0;
+
+		for (String field = this.firstField(ZWaveModelTree.class); field != null; field = this.p.nextFieldName())
+		{
+			JsonToken token = this.p.nextToken();
+			switch (field)
+			{
+				case AREAS:
+				{
+					// not used by drivers
+					if ((this.projection != null) || (token == JsonToken.VALUE_NULL))
+						this.p.skipChildren();
+					else
+						areas = this.ctxt.readValue(this.p, Areas.class);
+					break;
+				}
+				case CONTROLLER:
+				{
+					controller = (token == JsonToken.VALUE_NULL) ? null : this.readController();
+					break;
+				}
+				case DEVICES:
+				{
+					devices = (token == JsonToken.VALUE_NULL) ? null : this.readDevices();
+					break;
+				}
+				case UPDATE_TIME:
+				{
+					updateTime = this.p.getValueAsLong();
+					break;
+				}
+				default:
+				{
+					this.p.skipChildren();
+				}
+			}
+		}
+
+		return new ZWaveModelTree(areas, controller, devices, updateTime);
+	}
+
+	/**
+	 * @return the controller
+	 * @throws IOException
+	 */
+	public Controller readController() throws IOException
+	{
+		Controller controller = new Controller();
+		for (String field = this.firstField(Controller.class); field != null; field = this.p.nextFieldName())
+		{
+			JsonToken token = this.p.nextToken();
+			if (field.equals(DATA))
+				controller.setData((token == JsonToken.VALUE_NULL) ? null : this.readControllerData());
+			else
+				this.p.skipChildren();
+		}
+
+		return controller;
+	}
+
+	/**
+	 * @return the controller data
+	 * @throws IOException
+	 */
+	public ControllerData readControllerData() throws IOException
+	{
+		DataHolder holder = this.readDataHolder(ControllerData.class);
+		ControllerData data = new ControllerData(holder.updateTime, holder.name, holder.value, holder.type,
+				holder.invalidateTime);
+		this.popChildren(holder.base, data.getAllData());
+		return data;
+	}
+
+	/**
+	 * Reads the devices, building only those in the projection, if any
+	 *
+	 * @return the devices, by node id
+	 * @throws IOException
+	 */
+	private Map<Integer, Device> readDevices() throws IOException
+	{
+		if (this.projection == null)
+		{
+			Map<Integer, Device> devices = new LinkedHashMap<Integer, Device>();
+			for (String field = this.firstField(Map.class); field != null; field = this.p.nextFieldName())
+			{
+				Integer nodeId = this.toId(field);
+				devices.put(nodeId, (this.p.nextToken() == JsonToken.VALUE_NULL) ? null : this.readDevice());
+			}
+			return devices;
+		}
+
+		// raw devices are built by the codec reading the tree, if any
+		ObjectCodec codec = this.p.getCodec();
+
+		ProjectedDeviceMap devices = new ProjectedDeviceMap();
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try
+		{
+			for (String field = this.firstField(Map.class); field != null; field = this.p.nextFieldName())
+			{
+				Integer nodeId = this.toId(field);
+				JsonToken token = this.p.nextToken();
+				if ((token == JsonToken.START_OBJECT) && (codec != null)
+						&& (!this.projection.includesDevice(nodeId)))
+					devices.putRaw(nodeId, this.copyRaw(deflater), codec);
+				else
+					devices.put(nodeId, (token == JsonToken.VALUE_NULL) ? null : this.readDevice());
+			}
+		}
+		finally
+		{
+			deflater.end();
+		}
+
+		return devices;
+	}
+
+	/**
+	 * @return the device
+	 * @throws IOException
+	 */
+	public Device readDevice() throws IOException
+	{
+		DeviceData data = null;
+		Map<Integer, Instance> instances = null;
+
+		for (String field = this.firstField(Device.class); field != null; field = this.p.nextFieldName())
+		{
+			JsonToken token = this.p.nextToken();
+			if (field.equals(DATA))
+				data = (token == JsonToken.VALUE_NULL) ? null : this.readDeviceData();
+			else if (field.equals(INSTANCES))
+				instances = (token == JsonToken.VALUE_NULL) ? null : this.readInstances();
+			else
+				this.p.skipChildren();
+		}
+
+		return new Device(data, instances);
+	}
+
+	/**
+	 * @return the device data
+	 * @throws IOException
+	 */
+	public DeviceData readDeviceData() throws IOException
+	{
+		DataHolder holder = this.readDataHolder(DeviceData.class);
+		DeviceData data = new DeviceData(holder.updateTime, holder.name, holder.value, holder.type,
+				holder.invalidateTime);
+		this.popChildren(holder.base, data.getAllData());
+		return data;
+	}
+
+	/**
+	 * @return the instances, by instance id
+	 * @throws IOException
+	 */
+	private Map<Integer, Instance> readInstances() throws IOException
+	{
+		Map<Integer, Instance> instances = new LinkedHashMap<Integer, Instance>();
+		for (String field = this.firstField(Map.class); field != null; field = this.p.nextFieldName())
+		{
+			Integer instanceId = this.toId(field);
+			instances.put(instanceId, (this.p.nextToken() == JsonToken.VALUE_NULL) ? null : this.readInstance());
+		}
+
+		return instances;
+	}
+
+	/**
+	 * @return the instance, without its id, set by the device
+	 * @throws IOException
+	 */
+	public Instance readInstance() throws IOException
+	{
+		Instance instance = new Instance();
+		for (String field = this.firstField(Instance.class); field != null; field = this.p.nextFieldName())
+		{
+			JsonToken token = this.p.nextToken();
+			if (field.equals(COMMAND_CLASSES))
+				instance.setCommandClasses((token == JsonToken.VALUE_NULL) ? null : this.readCommandClasses());
+			else if (field.equals(DATA))
+				instance.setData((token == JsonToken.VALUE_NULL) ? null : this.readInstanceData());
+			else
+				this.p.skipChildren();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * @return the instance data
+	 * @throws IOException
+	 */
+	public InstanceData readInstanceData() throws IOException
+	{
+		DataHolder holder = this.readDataHolder(InstanceData.class);
+		InstanceData data = new InstanceData(holder.updateTime, holder.name, holder.value, holder.type,
+				holder.invalidateTime);
+		this.popChildren(holder.base, data.getAllData());
+		return data;
+	}
+
+	/**
+	 * @return the command classes, by command class id
+	 * @throws IOException
+	 */
+	private Map<Integer, CommandClasses> readCommandClasses() throws IOException
+	{
+		Map<Integer, CommandClasses> commandClasses = new LinkedHashMap<Integer, CommandClasses>();
+		for (String field = this.firstField(Map.class); field != null; field = this.p.nextFieldName())
+		{
+			Integer commandClassId = this.toId(field);
+			commandClasses.put(commandClassId,
+					(this.p.nextToken() == JsonToken.VALUE_NULL) ? null : this.readCommandClass());
+		}
+
+		return commandClasses;
+	}
+
+	/**
+	 * @return the command class
+	 * @throws IOException
+	 */
+	public CommandClasses readCommandClass() throws IOException
+	{
+		CommandClasses commandClass = new CommandClasses();
+		for (String field = this.firstField(CommandClasses.class); field != null; field = this.p.nextFieldName())
+		{
+			JsonToken token = this.p.nextToken();
+			switch (field)
+			{
+				case NAME:
+				{
+					commandClass.setName(this.readString(token));
+					break;
+				}
+				case DATA:
+				{
+					commandClass.setCommandClassesData(
+							(token == JsonToken.VALUE_NULL) ? null : this.readCommandClassesData());
+					break;
+				}
+				case USER_GET:
+				{
+					if (this.projection != null)
+						this.p.skipChildren();
+					else
+						commandClass.setUserGet(this.readUntypedMap(token));
+					break;
+				}
+				case USER_SET:
+				{
+					if (this.projection != null)
+						this.p.skipChildren();
+					else
+						commandClass.setUserSet(this.readUntypedMap(token));
+					break;
+				}
+				case CONFIG_GET:
+				{
+					if (this.projection != null)
+						this.p.skipChildren();
+					else
+						commandClass.setConfigGet(this.readGetSetEntries(token));
+					break;
+				}
+				case CONFIG_SET:
+				{
+					if (this.projection != null)
+						this.p.skipChildren();
+					else
+						commandClass.setConfigSet(this.readGetSetEntries(token));
+					break;
+				}
+				default:
+				{
+					this.p.skipChildren();
+				}
+			}
+		}
+
+		return commandClass;
+	}
+
+	/**
+	 * @return the command class data
+	 * @throws IOException
+	 */
+	public CommandClassesData readCommandClassesData() throws IOException
+	{
+		DataHolder holder = this.readDataHolder(CommandClassesData.class);
+		CommandClassesData data = new CommandClassesData(holder.updateTime, holder.name, holder.value,
+				holder.type, holder.invalidateTime);
+		this.popChildren(holder.base, data.getAllData());
+		return data;
+	}
+
+	/**
+	 * Reads the fields of a top level data element (e.g., of a device), the
+	 * children are left on the stack
+	 *
+	 * @param type
+	 *            the data element class, for errors
+	 * @return the fields
+	 * @throws IOException
+	 */
+	private DataHolder readDataHolder(Class<?> type) throws IOException
+	{
+		DataHolder holder = new DataHolder(this.top);
+		for (String field = this.firstField(type); field != null; field = this.p.nextFieldName())
+		{
+			JsonToken token = this.p.nextToken();
+			switch (field)
+			{
+				case UPDATE_TIME:
+				{
+					holder.updateTime = this.readInteger(token);
+					break;
+				}
+				case INVALIDATE_TIME:
+				{
+					holder.invalidateTime = this.readInteger(token);
+					break;
+				}
+				case NAME:
+				{
+					holder.name = this.readString(token);
+					break;
+				}
+				case TYPE:
+				{
+					holder.type = this.readString(token);
+					break;
+				}
+				case VALUE:
+				{
+					holder.value = this.readUntyped(token);
+					break;
+				}
+				default:
+				{
+					this.pushChild(field, (token == JsonToken.VALUE_NULL) ? null : this.readDataElem());
+				}
+			}
+		}
+
+		return holder;
+	}
+
+	/**
+	 * @return the data element
+	 * @throws IOException
+	 */
+	public DataElemObject readDataElem() throws IOException
+	{
+		int base = this.top;
+		long updateTime = 0;
+		long invalidateTime = 0;
+		String name = null;
+		String type = null;
+		byte valueKind = DataElemObject.OBJECT_VALUE;
+		long valueBits = 0;
+		Object value = null;
+
+		for (String field = this.firstField(DataElemObject.class); field != null; field = this.p.nextFieldName())
+		{
+			JsonToken token = this.p.nextToken();
+			switch (field)
+			{
+				case UPDATE_TIME:
+				{
+					updateTime = this.p.getValueAsLong();
+					break;
+				}
+				case INVALIDATE_TIME:
+				{
+					invalidateTime = this.p.getValueAsLong();
+					break;
+				}
+				case NAME:
+				{
+					name = this.readString(token);
+					break;
+				}
+				case TYPE:
+				{
+					type = this.readString(token);
+					break;
+				}
+				case VALUE:
+				{
+					// primitive values are kept unboxed
+					valueKind = DataElemObject.OBJECT_VALUE;
+					valueBits = 0;
+					value = null;
+					if ((token == JsonToken.VALUE_NUMBER_INT) && (!this.hasIntFeatures()))
+					{
+						switch (this.p.getNumberType())
+						{
+							case INT:
+								valueKind = DataElemObject.INT_VALUE;
+								valueBits = this.p.getIntValue();
+								break;
+							case LONG:
+								valueKind = DataElemObject.LONG_VALUE;
+								valueBits = this.p.getLongValue();
+								break;
+							default:
+								value = this.p.getNumberValue();
+						}
+					}
+					else if ((token == JsonToken.VALUE_NUMBER_FLOAT)
+							&& (!this.ctxt.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)))
+					{
+						valueKind = DataElemObject.DOUBLE_VALUE;
+						valueBits = Double.doubleToRawLongBits(this.p.getDoubleValue());
+					}
+					else if ((token == JsonToken.VALUE_TRUE) || (token == JsonToken.VALUE_FALSE))
+					{
+						valueKind = DataElemObject.BOOLEAN_VALUE;
+						valueBits = (token == JsonToken.VALUE_TRUE) ? 1 : 0;
+					}
+					else
+						value = this.readUntyped(token);
+					break;
+				}
+				default:
+				{
+					this.pushChild(field, (token == JsonToken.VALUE_NULL) ? null : this.readDataElem());
+				}
+			}
+		}
+
+		DataElemObject elem = new DataElemObject(updateTime, name, type, invalidateTime, valueKind, valueBits,
+				value);
+		for (int i = base; i < this.top; i++)
+			elem.setAllData(this.childNames[i], this.children[i]);
+		this.clearChildren(base);
+
+		return elem;
+	}
+
+	/**
+	 * Reads a configGet or configSet section
+	 *
+	 * @param token
+	 *            the current token
+	 * @return the entries, by command name
+	 * @throws IOException
+	 */
+	private Map<String, List<GetSetEntry>> readGetSetEntries(JsonToken token) throws IOException
+	{
+		if (token == JsonToken.VALUE_NULL)
+			return null;
+
+		Map<String, List<GetSetEntry>> entries = new LinkedHashMap<String, List<GetSetEntry>>();
+		for (String field = this.firstField(Map.class); field != null; field = this.p.nextFieldName())
+		{
+			if (this.p.nextToken() == JsonToken.VALUE_NULL)
+			{
+				entries.put(field, null);
+				continue;
+			}
+			if (!this.p.isExpectedStartArrayToken())
+				this.ctxt.handleUnexpectedToken(List.class, this.p);
+
+			List<GetSetEntry> list = new ArrayList<GetSetEntry>();
+			for (JsonToken item = this.p.nextToken(); item != JsonToken.END_ARRAY; item = this.p.nextToken())
+				list.add((item == JsonToken.VALUE_NULL) ? null : this.readGetSetEntry());
+			entries.put(field, list);
+		}
+
+		return entries;
+	}
+
+	/**
+	 * @return the configGet or configSet entry
+	 * @throws IOException
+	 */
+	private GetSetEntry readGetSetEntry() throws IOException
+	{
+		GetSetEntry entry = new GetSetEntry();
+		for (String field = this.firstField(GetSetEntry.class); field != null; field = this.p.nextFieldName())
+		{
+			JsonToken token = this.p.nextToken();
+			if (field.equals(LABEL))
+				entry.setLabel(this.readString(token));
+			else if (field.equals(TYPE))
+				entry.setType(this.readUntypedMap(token));
+			else
+				this.p.skipChildren();
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Reads an untyped value: maps, lists, strings, numbers and booleans, as
+	 * the Jackson untyped deserializer
+	 *
+	 * @param token
+	 *            the current token
+	 * @return the value
+	 * @throws IOException
+	 */
+	public Object readUntyped(JsonToken token) throws IOException
+	{
+		if (token == null)
+			return this.ctxt.handleUnexpectedToken(Object.class, this.p);
+
+		switch (token)
+		{
+			case START_OBJECT:
+			case FIELD_NAME:
+			case END_OBJECT:
+				return this.readUntypedMap(token);
+			case START_ARRAY:
+			{
+				List<Object> list = new ArrayList<Object>();
+				for (JsonToken item = this.p.nextToken(); item != JsonToken.END_ARRAY; item = this.p.nextToken())
+					list.add(this.readUntyped(item));
+
+				if (this.ctxt.isEnabled(DeserializationFeature.USE_JAVA_ARRAY_FOR_JSON_ARRAY))
+					return list.toArray();
+
+				return list;
+			}
+			case VALUE_STRING:
+				return this.readString(token);
+			case VALUE_NUMBER_INT:
+				if (this.ctxt.isEnabled(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS))
+					return this.p.getBigIntegerValue();
+				if (this.ctxt.isEnabled(DeserializationFeature.USE_LONG_FOR_INTS))
+					return this.p.getLongValue();
+				return this.p.getNumberValue();
+			case VALUE_NUMBER_FLOAT:
+				if (this.ctxt.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS))
+					return this.p.getDecimalValue();
+				return this.p.getDoubleValue();
+			case VALUE_TRUE:
+				return Boolean.TRUE;
+			case VALUE_FALSE:
+				return Boolean.FALSE;
+			case VALUE_EMBEDDED_OBJECT:
+				return this.p.getEmbeddedObject();
+			case VALUE_NULL:
+				return null;
+			default:
+				return this.ctxt.handleUnexpectedToken(Object.class, this.p);
+		}
+	}
+
+	/**
+	 * Reads an untyped object, from its start or from its first field
+	 *
+	 * @param token
+	 *            the current token
+	 * @return the object, as an ordered map
+	 * @throws IOException
+	 */
+	private Map<String, Object> readUntypedMap(JsonToken token) throws IOException
+	{
+		if (token == JsonToken.VALUE_NULL)
+			return null;
+
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		for (String field = this.firstField(Map.class); field != null; field = this.p.nextFieldName())
+			map.put(field, this.readUntyped(this.p.nextToken()));
+
+		return map;
+	}
+
+	/**
+	 * Reads a string, canonicalized if short enough
+	 *
+	 * @param token
+	 *            the current token
+	 * @return the string
+	 * @throws IOException
+	 */
+	public String readString(JsonToken token) throws IOException
+	{
+		if (token == JsonToken.VALUE_STRING)
+		{
+			return ZWaveJsonModule.canonicalText(this.strings, this.p);
+		}
+
+		if (token == JsonToken.VALUE_NULL)
+			return null;
+
+		// numbers, booleans and the like, as text
+		if ((token != null) && (token.isScalarValue()))
+			return this.p.getText();
+
+		return (String) this.ctxt.handleUnexpectedToken(String.class, this.p);
+	}
+
+	/**
+	 * Reads an Integer, as the creators of data elements expect
+	 *
+	 * @param token
+	 *            the current token
+	 * @return the Integer
+	 * @throws IOException
+	 */
+	private Integer readInteger(JsonToken token) throws IOException
+	{
+		if (token == JsonToken.VALUE_NULL)
+			return null;
+
+		if ((token != null) && (token.isScalarValue()))
+			return Integer.valueOf(this.p.getValueAsInt());
+
+		return (Integer) this.ctxt.handleUnexpectedToken(Integer.class, this.p);
+	}
+
+	/**
+	 * @return true if integers must be read as big integers or longs
+	 */
+	private boolean hasIntFeatures()
+	{
+		return this.ctxt.isEnabled(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS)
+				|| this.ctxt.isEnabled(DeserializationFeature.USE_LONG_FOR_INTS);
+	}
+
+	/**
+	 * Returns the first field of the current object
+	 *
+	 * @param type
+	 *            the object class, for errors
+	 * @return the first field name, or null if the object is empty
+	 * @throws IOException
+	 */
+	private String firstField(Class<?> type) throws IOException
+	{
+		JsonToken token = this.p.currentToken();
+		if (token == JsonToken.START_OBJECT)
+			return this.p.nextFieldName();
+		if (token == JsonToken.FIELD_NAME)
+			return this.p.getCurrentName();
+		if (token == JsonToken.END_OBJECT)
+			return null;
+
+		this.ctxt.handleUnexpectedToken(type, this.p);
+		return null;
+	}
+
+	/**
+	 * @param field
+	 *            a field name
+	 * @return the id of the given name
+	 * @throws IOException
+	 */
+	private Integer toId(String field) throws IOException
+	{
+		try
+		{
+			return ZWaveJsonModule.toId(Integer.parseInt(field));
+		}
+		catch (NumberFormatException e)
+		{
+			return (Integer) this.ctxt.handleWeirdKey(Integer.class, field, "not a valid Integer value");
+		}
+	}
+
+	/**
+	 * Pushes a child of the data element being read
+	 *
+	 * @param name
+	 * @param child
+	 */
+	private void pushChild(String name, DataElemObject child)
+	{
+		// created on demand, many reads have no data elements
+		if (this.children == null)
+		{
+			this.childNames = new String[32];
+			this.children = new DataElemObject[32];
+		}
+		else if (this.top == this.children.length)
+		{
+			this.childNames = Arrays.copyOf(this.childNames, this.top * 2);
+			this.children = Arrays.copyOf(this.children, this.top * 2);
+		}
+
+		this.childNames[this.top] = name;
+		this.children[this.top] = child;
+		this.top++;
+	}
+
+	/**
+	 * Moves the children above the given base to the given map
+	 *
+	 * @param base
+	 * @param data
+	 */
+	private void popChildren(int base, Map<String, DataElemObject> data)
+	{
+		for (int i = base; i < this.top; i++)
+			data.put(this.childNames[i], this.children[i]);
+		this.clearChildren(base);
+	}
+
+	/**
+	 * Removes the children above the given base
+	 *
+	 * @param base
+	 */
+	private void clearChildren(int base)
+	{
+		if (this.top == base)
+			return;
+
+		Arrays.fill(this.childNames, base, this.top, null);
+		Arrays.fill(this.children, base, this.top, null);
+		this.top = base;
+	}
+
+	/**
+	 * Copies the current value of the parser as deflated json, without the
+	 * unused sections of command classes: the json of a device is highly
+	 * repetitive, and deflated it takes a fraction of the memory of the built
+	 * device
+	 *
+	 * @param deflater
+	 *            the deflater to use, reset before use
+	 * @return the value json, deflated
+	 * @throws IOException
+	 */
+	private byte[] copyRaw(Deflater deflater) throws IOException
+	{
+		deflater.reset();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+		// closing the generator finishes the deflated stream
+		try (JsonGenerator generator = RAW_FACTORY.createGenerator(new DeflaterOutputStream(out, deflater, 512)))
+		{
+			int depth = 0;
+			do
+			{
+				JsonToken token = this.p.currentToken();
+				if ((token == JsonToken.FIELD_NAME) && (ZWaveModelReader.isUnusedSection(this.p.getCurrentName())))
+				{
+					this.p.nextToken();
+					this.p.skipChildren();
+					continue;
+				}
+
+				generator.copyCurrentEvent(this.p);
+				if (token.isStructStart())
+					depth++;
+				else if (token.isStructEnd())
+					depth--;
+			}
+			while ((depth > 0) && (this.p.nextToken() != null));
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param field
+	 * @return true if the field is a section of command classes not used by
+	 *         drivers, these names are not used anywhere else in a device
+	 */
+	private static boolean isUnusedSection(String field)
+	{
+		return field.equals(USER_GET) || field.equals(USER_SET) || field.equals(CONFIG_GET)
+				|| field.equals(CONFIG_SET);
+	}
+
+	/**
+	 * The fields of a top level data element, read before creating it
+	 */
+	private static class DataHolder
+	{
+		// the stack base of the children
+		private final int base;
+
+		private Integer updateTime;
+		private String name;
+		private Object value;
+		private String type;
+		private Integer invalidateTime;
+
+		public DataHolder(int base)
+		{
+			this.base = base;
+		}
+	}
+}
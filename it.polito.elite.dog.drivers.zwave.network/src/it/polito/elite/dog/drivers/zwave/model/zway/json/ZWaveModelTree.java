@@ -17,9 +17,11 @@
  */
 package it.polito.elite.dog.drivers.zwave.model.zway.json;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 
@@ -31,6 +33,11 @@ public class ZWaveModelTree {
 	private Map<Integer, Device> devices;
 	private long updateTime;
 
+	// the generation of this tree, increased at each update, as published
+	// trees are never modified after being published
+	@JsonIgnore
+	private long generation;
+
 	@JsonCreator
 	public ZWaveModelTree(@JsonProperty("areas") Areas areas,
 			@JsonProperty("controller") Controller controller,
@@ -61,7 +68,7 @@ public class ZWaveModelTree {
 		return updateTime;
 	}
 
-	public void setUpdateTime(Integer updateTime) {
+	public void setUpdateTime(long updateTime) {
 		this.updateTime = updateTime;
 	}
 
@@ -81,6 +88,35 @@ public class ZWaveModelTree {
 		this.devices = devices;
 	}
 
+	public long getGeneration() {
+		return generation;
+	}
+
+	public void setGeneration(long generation) {
+		this.generation = generation;
+	}
+
+	/**
+	 * Creates a shallow copy of this tree: the copy shares the areas, the
+	 * controller and the devices, but not the map holding them, therefore it
+	 * can be modified without affecting this tree.
+	 * 
+	 * @return the copy
+	 */
+	public ZWaveModelTree copy()
+	{
+		// projected devices are copied without building them
+		Map<Integer, Device> devices = null;
+		if (this.devices instanceof ProjectedDeviceMap)
+			devices = ((ProjectedDeviceMap) this.devices).copy();
+		else if (this.devices != null)
+			devices = new HashMap<Integer, Device>(this.devices);
+
+		ZWaveModelTree copy = new ZWaveModelTree(this.areas, this.controller, devices, this.updateTime);
+		copy.generation = this.generation;
+		return copy;
+	}
+
 	@Override
 	public String toString() 
 	{
@@ -42,6 +42,21 @@ public class ZWaveDriverImpl implements ZWaveNetwork, ManagedService
 	// the discovery configuration parameter
 	public static String AUTO_DISCOVERY = "autoDiscovery";
 
+	// the maximum rate of sensor update commands configuration parameter
+	public static String POLL_COMMANDS_PER_SECOND = "pollCommandsPerSecond";
+
+	// the maximum rate of user commands configuration parameter
+	public static String USER_COMMANDS_PER_SECOND = "userCommandsPerSecond";
+
+	// the time between connection trials configuration parameter
+	public static String BETWEEN_TRIAL_TIME_MILLIS = "betweenTrialTimeMillis";
+
+	// the number of connection trials configuration parameter
+	public static String NUM_TRY = "numTry";
+
+	// the projected model configuration parameter
+	public static String PROJECTED_MODEL = "projectedModel";
+
 	// ----------------------------------------------------------
 	// the log identifier, unique for the class
 	public static String LOG_ID = "[ZWaveDriverImpl]: ";
@@ -62,6 +77,23 @@ public class ZWaveDriverImpl implements ZWaveNetwork, ManagedService
 	// the auto-discovery flag, true by default
 	private boolean autoDiscovery;
 
+	// the maximum rate of sensor update commands, per gateway
+	private double pollCommandsPerSecond = ZWaveNetworkHandlerImpl.DEFAULT_POLL_COMMANDS_PER_SECOND;
+
+	// the maximum rate of user commands, per gateway
+	private double userCommandsPerSecond = ZWaveNetworkHandlerImpl.DEFAULT_USER_COMMANDS_PER_SECOND;
+
+	// the number of failed connection trials after which a gateway is
+	// considered unreachable
+	private int numTry = ZWaveNetworkHandlerImpl.DEFAULT_NUM_TRY;
+
+	// the time between connection trials to an unreachable gateway
+	private long betweenTrialTimeMillis = ZWaveNetworkHandlerImpl.DEFAULT_BETWEEN_TRIAL_TIME_MILLIS;
+
+	// the projected model flag, if true only the devices handled by drivers
+	// are built when the network tree is downloaded, false by default
+	private boolean projectedModel = false;
+
 	// the ZWaveNetworkHandler Map indexed by gateway URI (device id)
 	private ConcurrentHashMap<String, ZWaveNetworkHandlerImpl> handlers;
 
@@ -151,6 +183,80 @@ public class ZWaveDriverImpl implements ZWaveNetwork, ManagedService
 
 			// TODO: handle run-time change of the auto-discovery flag
 
+			// try to get the command rate limits
+			double newPollCommandsPerSecond = this.pollCommandsPerSecond;
+			double newUserCommandsPerSecond = this.userCommandsPerSecond;
+
+			String pollRateAsString = (String) properties
+					.get(ZWaveDriverImpl.POLL_COMMANDS_PER_SECOND);
+
+			// check not null
+			if (pollRateAsString != null)
+			{
+				// parse the string
+				newPollCommandsPerSecond = Double
+						.valueOf(pollRateAsString.trim());
+			}
+
+			String userRateAsString = (String) properties
+					.get(ZWaveDriverImpl.USER_COMMANDS_PER_SECOND);
+
+			// check not null
+			if (userRateAsString != null)
+			{
+				// parse the string
+				newUserCommandsPerSecond = Double
+						.valueOf(userRateAsString.trim());
+			}
+
+			if ((newPollCommandsPerSecond != this.pollCommandsPerSecond)
+					|| (newUserCommandsPerSecond != this.userCommandsPerSecond))
+			{
+				// store the new values
+				this.pollCommandsPerSecond = newPollCommandsPerSecond;
+				this.userCommandsPerSecond = newUserCommandsPerSecond;
+
+				// apply them to the existing handlers, a quick operation
+				// which does not need a separate thread
+				for (ZWaveNetworkHandlerImpl handler : this.handlers.values())
+					handler.setCommandRates(this.pollCommandsPerSecond,
+							this.userCommandsPerSecond);
+			}
+
+			// try to get the connection trial parameters
+			String betweenTrialTimeAsString = (String) properties
+					.get(ZWaveDriverImpl.BETWEEN_TRIAL_TIME_MILLIS);
+
+			// check not null
+			if (betweenTrialTimeAsString != null)
+			{
+				// parse the string
+				this.betweenTrialTimeMillis = Long
+						.valueOf(betweenTrialTimeAsString.trim());
+			}
+
+			String numTryAsString = (String) properties
+					.get(ZWaveDriverImpl.NUM_TRY);
+
+			// check not null
+			if (numTryAsString != null)
+			{
+				// parse the string
+				this.numTry = Integer.valueOf(numTryAsString.trim());
+			}
+
+			// try to get the projected model flag
+			String projectedModelAsString = (String) properties
+					.get(ZWaveDriverImpl.PROJECTED_MODEL);
+
+			// check not null
+			if (projectedModelAsString != null)
+			{
+				// parse the string
+				this.projectedModel = Boolean
+						.valueOf(projectedModelAsString.trim());
+			}
+
 			// register the driver service if not already registered
 			if (regServiceZWaveDriverImpl == null)
 				regServiceZWaveDriverImpl = bundleContext.registerService(
@@ -177,7 +283,10 @@ public class ZWaveDriverImpl implements ZWaveNetwork, ManagedService
 	 */
 	protected void deactivate()
 	{
-		// stop the all pollers?
+		// stop the pollers and the threads of all the handlers
+		for (ZWaveNetworkHandlerImpl handler : this.handlers.values())
+			handler.close();
+		this.handlers.clear();
 
 		// free all devices?
 
@@ -212,12 +321,21 @@ public class ZWaveDriverImpl implements ZWaveNetwork, ManagedService
 			// check if not already registered
 			if (!this.handlers.containsKey(nodeInfo.getAdapterEndpoint()))
 			{
+				// the current configuration
+				ZWaveNetworkHandlerSettings settings = new ZWaveNetworkHandlerSettings();
+				settings.setPollingTimeMillis(this.pollingTimeMillis);
+				settings.setAutoDiscovery(this.autoDiscovery);
+				settings.setPollCommandsPerSecond(this.pollCommandsPerSecond);
+				settings.setUserCommandsPerSecond(this.userCommandsPerSecond);
+				settings.setNumTry(this.numTry);
+				settings.setBetweenTrialTimeMillis(this.betweenTrialTimeMillis);
+				settings.setProjectedModel(this.projectedModel);
+
 				// insert the gateway
 				this.handlers.put(nodeInfo.getAdapterEndpoint(),
 						new ZWaveNetworkHandlerImpl(
 								nodeInfo.getAdapterEndpoint(), username,
-								password, this.pollingTimeMillis,
-								this.autoDiscovery, this.logger));
+								password, settings, this.logger));
 			}
 		}
 		// get the network handler
@@ -30,7 +30,9 @@ import it.polito.elite.dog.drivers.zwave.network.info.ZWaveNodeInfo;
 import it.polito.elite.dog.drivers.zwave.network.interfaces.ZWaveNetwork;
 import it.polito.elite.dog.drivers.zwave.network.interfaces.ZWaveNetworkHandler;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -99,6 +101,13 @@ public abstract class ZWaveDriverInstance implements StatefulDevice
 	// after a Get
 	protected int nFailedUpdate = 0;
 
+	// the notifications collected during the current dispatch cycle, null
+	// when no cycle is open, and the status update flag, guarded by the cycle
+	// lock
+	private final Object cycleLock = new Object();
+	private List<Runnable> cycleNotifications = null;
+	private boolean cycleStatusUpdate = false;
+
 	/**
 	 * The base class constructor, provides common initialization for all the
 	 * needed data structures, must be called by sub-class constructors
@@ -276,6 +285,97 @@ public abstract class ZWaveDriverInstance implements StatefulDevice
 	public abstract void newMessageFromHouse(Device deviceNode,
 			Instance instanceNode, Controller controllerNode, String sValue);
 
+	/**
+	 * Updates the status of the device in the Dog core, i.e., the snapshot of
+	 * all its states
+	 */
+	public abstract void updateStatus();
+
+	/**
+	 * Notifies a state change to the Dog core: during a dispatch cycle, i.e.,
+	 * while handling new data from the network, the notification is delivered
+	 * asynchronously after the cycle, otherwise it is delivered at once. The
+	 * order of the notifications of the device is preserved.
+	 * 
+	 * @param notification
+	 *            the notification to deliver, typically calling one of the
+	 *            notify methods of the device
+	 */
+	protected void notifyAsync(Runnable notification)
+	{
+		synchronized (this.cycleLock)
+		{
+			if (this.cycleNotifications != null)
+			{
+				this.cycleNotifications.add(notification);
+				return;
+			}
+		}
+
+		notification.run();
+	}
+
+	/**
+	 * Requests a status update of the device: during a dispatch cycle the
+	 * update is delivered asynchronously after the cycle notifications, once
+	 * per cycle however many times it is requested, otherwise it is delivered
+	 * at once.
+	 */
+	protected void requestStatusUpdate()
+	{
+		synchronized (this.cycleLock)
+		{
+			if (this.cycleNotifications != null)
+			{
+				this.cycleStatusUpdate = true;
+				return;
+			}
+		}
+
+		this.updateStatus();
+	}
+
+	/**
+	 * Opens a dispatch cycle, from now on notifications are collected
+	 */
+	void beginNotificationCycle()
+	{
+		synchronized (this.cycleLock)
+		{
+			this.cycleNotifications = new ArrayList<Runnable>();
+			this.cycleStatusUpdate = false;
+		}
+	}
+
+	/**
+	 * Closes the current dispatch cycle, submitting the collected
+	 * notifications to the given pipeline
+	 * 
+	 * @param pipeline
+	 *            the pipeline delivering the notifications
+	 * @param done
+	 *            run once the notifications and the status update of the
+	 *            cycle have been delivered, the state of the device shall not
+	 *            change meanwhile
+	 */
+	void endNotificationCycle(ZWaveNotificationPipeline pipeline, Runnable done)
+	{
+		List<Runnable> notifications;
+		boolean statusUpdate;
+		synchronized (this.cycleLock)
+		{
+			notifications = this.cycleNotifications;
+			statusUpdate = this.cycleStatusUpdate;
+			this.cycleNotifications = null;
+			this.cycleStatusUpdate = false;
+		}
+
+		if (notifications != null)
+			pipeline.submit(this, notifications, statusUpdate, done);
+		else
+			done.run();
+	}
+
 	/**
 	 * Extending classes might implement this method to provide driver-specific
 	 * configurations to be done during the driver creation process, before
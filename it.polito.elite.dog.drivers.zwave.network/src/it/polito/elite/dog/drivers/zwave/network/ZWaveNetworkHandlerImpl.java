@@ -3,13 +3,31 @@
  */
 package it.polito.elite.dog.drivers.zwave.network;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.osgi.framework.Version;
 import org.osgi.service.log.LogService;
@@ -18,15 +36,24 @@ import org.osgi.service.log.Logger;
 import it.polito.elite.dog.core.library.model.ControllableDevice;
 import it.polito.elite.dog.drivers.zwave.model.ZWaveRawCommandClass;
 import it.polito.elite.dog.drivers.zwave.model.zway.json.Controller;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.DataElemObject;
 import it.polito.elite.dog.drivers.zwave.model.zway.json.Device;
 import it.polito.elite.dog.drivers.zwave.model.zway.json.Instance;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.ZWaveModelProjection;
 import it.polito.elite.dog.drivers.zwave.model.zway.json.ZWaveModelTree;
+import it.polito.elite.dog.drivers.zwave.network.info.ZWaveDataPoint;
 import it.polito.elite.dog.drivers.zwave.network.info.ZWaveNodeInfo;
+import it.polito.elite.dog.drivers.zwave.network.interfaces.ZWaveDataPointListener;
 import it.polito.elite.dog.drivers.zwave.network.interfaces.ZWaveDiscoveryListener;
 import it.polito.elite.dog.drivers.zwave.network.interfaces.ZWaveNetworkHandler;
 import it.polito.elite.dog.drivers.zwave.network.tasks.NotifyNotExistingDeviceTask;
 import it.polito.elite.dog.drivers.zwave.network.tasks.NotifyUnknownDeviceTask;
 import it.polito.elite.dog.drivers.zwave.util.ConnectionManager;
+import it.polito.elite.dog.drivers.zwave.util.HttpLane;
+import it.polito.elite.dog.drivers.zwave.util.KeyedSerialExecutor;
+import it.polito.elite.dog.drivers.zwave.util.TokenBucket;
+import it.polito.elite.dog.drivers.zwave.util.ZWaveGatewayUnavailableException;
+import it.polito.elite.dog.drivers.zwave.util.ZWaveModelChanges;
 
 /**
  * This shall handle a single ZWave network connected to a well defined gateway
@@ -42,6 +69,31 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 	// the default polling time
 	public static final int DEFAULT_POLLING_TIME_MILLIS = 5000;
 
+	// the default rate of sensor update (Get) commands
+	public static final double DEFAULT_POLL_COMMANDS_PER_SECOND = 5;
+
+	// the default rate of user commands
+	public static final double DEFAULT_USER_COMMANDS_PER_SECOND = 10;
+
+	// the default number of consecutive failures after which the gateway is
+	// considered unreachable
+	public static final int DEFAULT_NUM_TRY = ConnectionManager.DEFAULT_NUM_TRY;
+
+	// the default time between two connection trials to an unreachable
+	// gateway
+	public static final long DEFAULT_BETWEEN_TRIAL_TIME_MILLIS = ConnectionManager.DEFAULT_BETWEEN_TRIAL_TIME_MILLIS;
+
+	// the time after which all unknown and not existing devices are notified
+	// again, even if the network did not change
+	public static final long DISCOVERY_RESCAN_MILLIS = 60000;
+
+	// the maximum number of discovery notifications waiting to be delivered
+	private static final int MAX_PENDING_NOTIFICATIONS = 64;
+
+	// the maximum number of device notification batches waiting to be
+	// delivered
+	private static final int MAX_PENDING_NOTIFICATION_BATCHES = 1024;
+
 	// the URL of the pseudo-REST end point of the Z-Way server
 	private String gatewayEndpointURL;
 
@@ -58,17 +110,34 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 	// with the given url.
 	private ConnectionManager conManager;
 
-	// model tree representing the system
-	private ZWaveModelTree modelTree;
+	// the registered nodes and drivers, indexed by node id. Please notice
+	// that on the basis of the driver instance definition a single
+	// ZWaveDriverInstance will never handle more than one z-wave node,
+	// therefore the driver of a node is found from its node id and the node
+	// of a driver from its node info.
+	private ZWaveNodeRegistry nodeRegistry;
+
+	// the data point subscriptions, indexed by device instance (see
+	// instanceKey), so that only the subscriptions of changed instances are
+	// checked at each dispatch
+	private ConcurrentHashMap<Integer, List<DataPointSubscription>> subscriptions;
 
-	// the nodeInfo to Driver map
-	private ConcurrentHashMap<ZWaveNodeInfo, ZWaveDriverInstance> nodeInfo2Driver;
+	// the nodes whose sensor update has been deferred as they were sleeping,
+	// updates are sent as soon as the node is observed awake
+	private Set<ZWaveNodeInfo> deferredUpdates;
 
-	// the inverse map
-	// Please notice that on the basis of the driver instance definition a
-	// single ZWaveDriverInstance will never handle more than one z-wave node.
-	// Therefore using a map here is likely overkill. 
-	private ConcurrentHashMap<ZWaveDriverInstance, ZWaveNodeInfo> driver2NodeInfo;
+	// the nodes whose sensor update is waiting for the poll rate limiter, a
+	// node has at most one update waiting
+	private Set<Integer> pendingUpdates;
+
+	// the sensor updates skipped as the poll rate limiter was too far behind
+	private AtomicLong skippedUpdates = new AtomicLong();
+
+	// the rate limiters pacing the commands sent over the radio, sensor
+	// updates and user commands have separate budgets so that polling does
+	// not use up the budget of user commands
+	private TokenBucket pollLimiter;
+	private TokenBucket commandLimiter;
 
 	// the zwave poller thread
 	private ZWavePoller poller;
@@ -91,41 +160,133 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 	// the notification executor service
 	private ExecutorService deviceNotificationService;
 
+	// the discovery state, guarded by the discovery lock: the node ids
+	// present at the network level and registered in the last sync, the node
+	// ids with a notification waiting to be delivered, the scratch sets of the
+	// current sync and the time of the next full rescan
+	private final Object discoveryLock = new Object();
+	private BitSet syncedNetworkNodes = new BitSet();
+	private BitSet syncedRegisteredNodes = new BitSet();
+	private BitSet networkNodes = new BitSet();
+	private BitSet registeredNodes = new BitSet();
+	private final BitSet pendingUnknown = new BitSet();
+	private final BitSet pendingNotExisting = new BitSet();
+	private long nextRescanTime = 0;
+
+	// the executor delivering node data to drivers, different nodes in
+	// parallel and the same node in order
+	private KeyedSerialExecutor dispatchExecutor;
+
+	// the pipeline delivering the driver notifications to the Dog core
+	private ZWaveNotificationPipeline notificationPipeline;
+
+	// the dispatches waiting to run, by node id, guarded by the map itself:
+	// further changes of a node are merged into its waiting dispatch
+	private Map<Integer, PendingDispatch> pendingDispatches;
+
+	// the nodes being dispatched, or whose notifications are being delivered,
+	// guarded by the map of the pending dispatches: their next dispatch waits
+	// for the delivery, so that the status snapshot of a device only holds
+	// the states of one dispatch
+	private Set<Integer> activeDispatches;
+
+	// the executor serving the initial reads of attached drivers, a single
+	// thread so that the first read fetches the model tree and the following
+	// ones are served from it
+	private ExecutorService initialReadService;
+
 	/**
 	 * 
 	 */
 	public ZWaveNetworkHandlerImpl(String gatewayEndpointURL, String username,
 			String password, int pollingTimeMillis, boolean autoDiscovery,
 			Logger logger)
+	{
+		this(gatewayEndpointURL, username, password,
+				ZWaveNetworkHandlerImpl.settings(pollingTimeMillis,
+						autoDiscovery),
+				logger);
+	}
+
+	/**
+	 * 
+	 * @param settings
+	 *            the handler settings, read once here
+	 */
+	public ZWaveNetworkHandlerImpl(String gatewayEndpointURL, String username,
+			String password, ZWaveNetworkHandlerSettings settings,
+			Logger logger)
 	{
 		// TODO add checks for needed values
 		// store the instance variables
 		this.gatewayEndpointURL = gatewayEndpointURL; // gateway url
 		this.username = username; // the username to access the gateway
 		this.password = password; // the password to access the gateway
-		this.pollingTimeMillis = pollingTimeMillis; // the polling time to use
-		this.autoDiscovery = autoDiscovery; // the auto-discovery flag
+		this.pollingTimeMillis = settings.getPollingTimeMillis(); // the polling time to use
+		this.autoDiscovery = settings.isAutoDiscovery(); // the auto-discovery flag
 		this.logger = logger; // the logger to provide information when needed
-		this.discoveryListeners = new HashSet<ZWaveDiscoveryListener>();
+		this.discoveryListeners = new CopyOnWriteArraySet<ZWaveDiscoveryListener>();
+
+		// the rate limiters, allowing bursts of one second of commands
+		this.pollLimiter = new TokenBucket(settings.getPollCommandsPerSecond(),
+				(int) settings.getPollCommandsPerSecond());
+		this.commandLimiter = new TokenBucket(
+				settings.getUserCommandsPerSecond(),
+				(int) settings.getUserCommandsPerSecond());
+
+		// the notification service for unknown devices, a single thread
+		// working off a bounded queue: notifications are deduplicated per
+		// node, and those not fitting the queue are sent at the next rescan
+		this.deviceNotificationService = new ThreadPoolExecutor(1, 1, 0L,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+						MAX_PENDING_NOTIFICATIONS));
+
+		// the initial read service
+		this.initialReadService = Executors.newSingleThreadExecutor();
 
-		// the notification service for unknown devices
-		// TODO: check whether a single thread working off an unbounded queue is
-		// sufficient - may raise memory issues if the number of discovered devices is high
-		this.deviceNotificationService = Executors.newSingleThreadExecutor();
+		// the dispatch service, one thread per core
+		this.dispatchExecutor = new KeyedSerialExecutor("dispatch",
+				Runtime.getRuntime().availableProcessors());
+		this.pendingDispatches = new HashMap<Integer, PendingDispatch>();
+		this.activeDispatches = new HashSet<Integer>();
 
-		/*--- Bi-directional hash map, naive implementation ----*/
+		// the notification pipeline, one thread per core
+		this.notificationPipeline = new ZWaveNotificationPipeline(
+				Runtime.getRuntime().availableProcessors(),
+				MAX_PENDING_NOTIFICATION_BATCHES, logger);
 
-		// create the node info to driver map
-		nodeInfo2Driver = new ConcurrentHashMap<ZWaveNodeInfo, ZWaveDriverInstance>();
+		// create the node registry
+		nodeRegistry = new ZWaveNodeRegistry();
 
-		// create the driver to node info map
-		driver2NodeInfo = new ConcurrentHashMap<ZWaveDriverInstance, ZWaveNodeInfo>();
+		// create the data point subscription index
+		subscriptions = new ConcurrentHashMap<Integer, List<DataPointSubscription>>();
+
+		// create the set of deferred sensor updates
+		deferredUpdates = ConcurrentHashMap.newKeySet();
+
+		// create the set of pending sensor updates
+		pendingUpdates = ConcurrentHashMap.newKeySet();
 
 		/*---- Physical connection handler ----*/
 
 		// Create a connection manager and try to connect to the server
 		this.conManager = new ConnectionManager(this.gatewayEndpointURL,
-				this.username, this.password, this.logger);
+				this.username, this.password, settings.getNumTry(),
+				settings.getBetweenTrialTimeMillis(), this.logger);
+
+		// build only the devices of the registered drivers, the registry is
+		// read while parsing the network tree
+		if (settings.isProjectedModel())
+		{
+			this.conManager.setModelProjection(new ZWaveModelProjection()
+			{
+				@Override
+				public boolean includesDevice(int nodeId)
+				{
+					return nodeRegistry.contains(nodeId);
+				}
+			});
+		}
 
 		// do not start the Poller if already existing
 		if (this.poller == null)
@@ -144,6 +305,47 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 
 	}
 
+	/**
+	 * Builds the settings of the given polling time and auto-discovery flag,
+	 * with all the others at their default value
+	 * 
+	 * @param pollingTimeMillis
+	 * @param autoDiscovery
+	 * @return the settings
+	 */
+	private static ZWaveNetworkHandlerSettings settings(int pollingTimeMillis,
+			boolean autoDiscovery)
+	{
+		ZWaveNetworkHandlerSettings settings = new ZWaveNetworkHandlerSettings();
+		settings.setPollingTimeMillis(pollingTimeMillis);
+		settings.setAutoDiscovery(autoDiscovery);
+		return settings;
+	}
+
+	/**
+	 * Closes the handler: stops the poller and all the threads of the
+	 * handler, after which no data is read from the gateway nor dispatched to
+	 * drivers
+	 */
+	public void close()
+	{
+		// stop the poller, which also stops its poll thread
+		this.poller.setRunnable(false);
+
+		// stop the executors: the pending reads and discovery notifications
+		// are dropped, the data already read is still dispatched
+		this.initialReadService.shutdownNow();
+		this.deviceNotificationService.shutdownNow();
+		this.dispatchExecutor.shutdown();
+		this.notificationPipeline.shutdown();
+
+		// and the connection threads
+		this.conManager.close();
+
+		this.logger.info(ZWaveDriverImpl.LOG_ID + "Closed the handler of "
+				+ this.gatewayEndpointURL);
+	}
+
 	/**
 	 * Provides a reference to the {@link LogService} instance used by this
 	 * class to log messages...
@@ -182,57 +384,18 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 				// read can directly be called with a model tree that needs
 				// updates,
 				// in such a case, first update the tree, then perform the read
-				if (bRequery || this.modelTree == null)
-					this.modelTree = this.conManager.updateDevices();
-
-				Device deviceNode = null;
-				Instance instanceNode = null;
-				Controller controllerNode = null;
-
-				// if node is the controller (gateway) we have to put also
-				// controller data.
-				if (nodeInfo.isController())
-					controllerNode = this.modelTree.getController();
-
-				deviceNode = this.modelTree.getDevices()
-						.get(nodeInfo.getDeviceNodeId());
-				Device device = this.modelTree.getDevices()
-						.get(nodeInfo.getDeviceNodeId());
-				// device can be null if the home configuration is wrong
-				if (device != null)
-				{
-					for (Integer instanceId : nodeInfo.getInstanceSet())
-					{
-						instanceNode = device.getInstances().get(instanceId);
-
-						// instance can be null if home configuration is
-						// wrong
-						if (instanceNode != null)
-						{
-							ZWaveDriverInstance driver = nodeInfo2Driver
-									.get(nodeInfo);
-							driver.newMessageFromHouse(deviceNode, instanceNode,
-									controllerNode, null);
-						}
-						else
-						{
-							// in this case the device is configured in dog, but
-							// it is no more available on the zwave network,
-							// therefore it should be removed.
-							logger.error(ZWaveDriverImpl.LOG_ID+
-									"Device id: " + nodeInfo.getDeviceNodeId()
-											+ " instance id: " + instanceId
-											+ " does not exists!");
-
-							// TODO: implement device removal here
-						}
-					}
-				}
-				else
-				{
-					logger.error(ZWaveDriverImpl.LOG_ID+ "Device id: "
-							+ nodeInfo.getDeviceNodeId() + " does not exists!");
-				}
+				// (changes are kept by the connection manager until the next
+				// readAll)
+				ZWaveModelTree tree = this.conManager.getModelTree();
+				if (bRequery || tree == null)
+					tree = this.conManager.updateDevices();
+
+				// dispatch all the node instances
+				this.scheduleDispatch(tree, nodeInfo, null);
+			}
+			catch (ZWaveGatewayUnavailableException e)
+			{
+				// already logged by the connection manager
 			}
 			catch (Exception e)
 			{
@@ -242,6 +405,30 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 		}
 	}
 
+	@Override
+	public void scheduleInitialRead(final ZWaveNodeInfo nodeInfo)
+	{
+		try
+		{
+			this.initialReadService.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					// the model tree is fetched only once, either here or by
+					// the poller, later on it is kept up-to-date by the poller
+					read(nodeInfo, false);
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// the handler has been closed
+			logger.debug(ZWaveDriverImpl.LOG_ID + "Handler closed, no read of device id: "
+					+ nodeInfo.getDeviceNodeId());
+		}
+	}
+
 	public void readAll(boolean bRequery)
 	{
 		// read only if a connection to the physical ZWay server is available.
@@ -250,12 +437,15 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 			try
 			{
 				// if needed update tree model
-				if (bRequery || this.modelTree == null)
+				ZWaveModelTree tree = this.conManager.getModelTree();
+				if (bRequery || tree == null)
 				{
 					// query the ZWay server to get the latest updates
 					// can throw an exception if something on the connection
 					// goes wrong.
-					this.modelTree = this.conManager.updateDevices();
+					tree = this.conManager.updateDevices();
+
+					this.logTrafficStatistics();
 
 					// this shall be done only on zwave network query, otherwise
 					// no change will be detected
@@ -263,13 +453,13 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 					// for example, connection to the gateway is lost. Shall not
 					// be called in such a case.
 					if (this.autoDiscovery)
-						this.zWaveNetworkSync();
+						this.zWaveNetworkSync(tree);
 				}
 
 				// if version still not available
 				if (this.version == null)
 				{
-					String versionAsString = (String) this.modelTree
+					String versionAsString = (String) tree
 							.getController().getData().getAllData()
 							.get("softwareRevisionVersion").getValue();
 					versionAsString = versionAsString.trim().substring(1);
@@ -278,16 +468,46 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 							"ZWay version:" + this.version);
 				}
 
+				// get all the changes occurred since the last dispatch,
+				// including those fetched by single node reads
+				ZWaveModelChanges changes = this.conManager.takeChanges();
+
+				// the tree published after taking the changes includes all
+				// of them, the whole dispatch reads this single generation
+				tree = this.conManager.getModelTree();
+
+				// send the sensor updates deferred for nodes now awake
+				if (!this.deferredUpdates.isEmpty())
+					this.flushDeferredUpdates(tree, changes);
+
 				// read information about all the configured devices, i.e., all
-				// devices already present in the current Dog configuration
-				for (ZWaveNodeInfo nodeInfo : driver2NodeInfo.values())
+				// devices already present in the current Dog configuration,
+				// which changed since the last dispatch
+				if (!changes.isEmpty())
 				{
-					read(nodeInfo, false);
-					// yield to other processes
-					Thread.yield();
+					for (int nodeId = 0; nodeId < this.nodeRegistry
+							.getCapacity(); nodeId++)
+					{
+						ZWaveNodeInfo nodeInfo = this.nodeRegistry
+								.getNodeInfo(nodeId);
+						if (nodeInfo == null)
+							continue;
+
+						// the controller only handles the controller data
+						boolean changed = nodeInfo.isController()
+								? changes.isControllerChanged()
+								: changes.isDeviceChanged(nodeInfo.getDeviceNodeId());
+
+						if (changed)
+							this.scheduleDispatch(tree, nodeInfo, changes);
+					}
 				}
 
 			}
+			catch (ZWaveGatewayUnavailableException e)
+			{
+				// already logged by the connection manager
+			}
 			catch (Exception e)
 			{
 				logger.error(ZWaveDriverImpl.LOG_ID+
@@ -297,44 +517,516 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 		}
 	}
 
-	public void updateSensor(ZWaveNodeInfo nodeInfo)
+	/**
+	 * Schedules the delivery of the current data of the given node to the
+	 * driver registered for it, on the dispatch executor. If a dispatch of the
+	 * node is already waiting to run, the changes are merged into it, and it
+	 * will deliver the data of the latest model tree. A dispatch starts once
+	 * the notifications of the previous one have been delivered.
+	 * 
+	 * @param tree
+	 *            the model tree to read
+	 * @param nodeInfo
+	 *            the node to dispatch
+	 * @param changes
+	 *            the model changes, only changed instances are dispatched; if
+	 *            null all instances are dispatched
+	 */
+	private void scheduleDispatch(ZWaveModelTree tree, ZWaveNodeInfo nodeInfo,
+			ZWaveModelChanges changes)
+	{
+		// the changed instances, null if all
+		Set<Integer> instances = null;
+		if ((changes != null) && (!nodeInfo.isController()))
+		{
+			instances = new HashSet<Integer>();
+			for (Integer instanceId : nodeInfo.getInstanceSet())
+			{
+				if (changes.isInstanceChanged(nodeInfo.getDeviceNodeId(),
+						instanceId))
+					instances.add(instanceId);
+			}
+		}
+
+		final Integer nodeId = nodeInfo.getDeviceNodeId();
+		final PendingDispatch pending;
+		synchronized (this.pendingDispatches)
+		{
+			PendingDispatch waiting = this.pendingDispatches.get(nodeId);
+			if (waiting != null)
+			{
+				waiting.merge(tree, nodeInfo, instances);
+				return;
+			}
+
+			this.pendingDispatches.put(nodeId,
+					new PendingDispatch(tree, nodeInfo, instances));
+
+			// the previous dispatch is still running or being delivered, it
+			// will start this one when done
+			if (!this.activeDispatches.add(nodeId))
+				return;
+		}
+
+		this.startDispatch(nodeId);
+	}
+
+	/**
+	 * Runs the pending dispatch of the given node on the dispatch executor,
+	 * the node being marked as active
+	 * 
+	 * @param nodeId
+	 *            the node to dispatch
+	 */
+	private void startDispatch(final Integer nodeId)
 	{
-		// check if the node info is registered...
-		if (this.nodeInfo2Driver.containsKey(nodeInfo))
+		// run once the notifications of the dispatch have been delivered
+		final Runnable done = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				dispatchDone(nodeId);
+			}
+		};
+
+		try
 		{
-			// send one update command per each command class
-			for (Entry<Integer, Set<Integer>> instanceCC : nodeInfo
-					.getInstanceSensorCC().entrySet())
+			this.dispatchExecutor.execute(nodeId, new Runnable()
 			{
-				for (Integer ccToTrigger : instanceCC.getValue())
+				@Override
+				public void run()
 				{
+					// no more changes can be merged from now on
+					PendingDispatch pending;
+					synchronized (pendingDispatches)
+					{
+						pending = pendingDispatches.remove(nodeId);
+					}
+
 					try
 					{
-						// check if the model still contains the device: in some
-						// cases device removal at the z-wave network-level may
-						// happen before than the time in which the gateway
-						// driver detects it.
-						if (this.modelTree.getDevices()
-								.containsKey(nodeInfo.getDeviceNodeId()))
-						{
-							this.conManager.sendCommand("devices["
-									+ nodeInfo.getDeviceNodeId()
-									+ "].instances[" + instanceCC.getKey()
-									+ "].commandClasses[" + ccToTrigger
-									+ "].Get()");
-						}
+						dispatch(pending.tree, pending.nodeInfo,
+								pending.instances, done);
 					}
 					catch (Exception e)
 					{
-						logger.error(ZWaveDriverImpl.LOG_ID+ "Can't send command",
-								e);
+						logger.error(ZWaveDriverImpl.LOG_ID
+								+ "Error while dispatching device id: "
+								+ nodeId, e);
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// the handler has been closed, drop the dispatch
+			synchronized (this.pendingDispatches)
+			{
+				this.pendingDispatches.remove(nodeId);
+				this.activeDispatches.remove(nodeId);
+			}
+		}
+	}
+
+	/**
+	 * Called once the notifications of a dispatch have been delivered: starts
+	 * the next dispatch of the node, if any changes arrived meanwhile
+	 * 
+	 * @param nodeId
+	 *            the dispatched node
+	 */
+	private void dispatchDone(Integer nodeId)
+	{
+		synchronized (this.pendingDispatches)
+		{
+			if (!this.pendingDispatches.containsKey(nodeId))
+			{
+				this.activeDispatches.remove(nodeId);
+				return;
+			}
+		}
+
+		this.startDispatch(nodeId);
+	}
+
+	/**
+	 * Delivers the current data of the given node to the driver registered for
+	 * it, one call per instance.
+	 * 
+	 * @param tree
+	 *            the model tree to read
+	 * @param nodeInfo
+	 *            the node to dispatch
+	 * @param instances
+	 *            the instances to dispatch; if null all instances are
+	 *            dispatched
+	 * @param done
+	 *            run once the notifications of the driver have been
+	 *            delivered, or at once if there is no driver
+	 */
+	private void dispatch(ZWaveModelTree tree, ZWaveNodeInfo nodeInfo,
+			Set<Integer> instances, Runnable done)
+	{
+		Device deviceNode = null;
+		Instance instanceNode = null;
+		Controller controllerNode = null;
+
+		// the driver currently connected to the device, its notifications
+		// are collected over all the instances and delivered at once
+		ZWaveDriverInstance driver = null;
+
+		try
+		{
+			// if node is the controller (gateway) we have to put also
+			// controller data.
+			if (nodeInfo.isController())
+				controllerNode = tree.getController();
+
+			deviceNode = tree.getDevices()
+					.get(nodeInfo.getDeviceNodeId());
+			// device can be null if the home configuration is wrong
+			if (deviceNode != null)
+			{
+				driver = this.nodeRegistry
+						.getDriver(nodeInfo.getDeviceNodeId());
+				if (driver != null)
+					driver.beginNotificationCycle();
+
+				for (Integer instanceId : nodeInfo.getInstanceSet())
+				{
+					// skip unchanged instances
+					if ((instances != null)
+							&& (!instances.contains(instanceId)))
+						continue;
+
+					instanceNode = deviceNode.getInstances().get(instanceId);
+
+					// instance can be null if home configuration is
+					// wrong
+					if (instanceNode != null)
+					{
+						// notify subscribed data points first
+						this.checkDataPoints(nodeInfo.getDeviceNodeId(),
+								instanceId, instanceNode);
+
+						if (driver != null)
+							driver.newMessageFromHouse(deviceNode,
+									instanceNode, controllerNode, null);
+					}
+					else
+					{
+						// in this case the device is configured in dog, but
+						// it is no more available on the zwave network,
+						// therefore it should be removed.
+						logger.error(ZWaveDriverImpl.LOG_ID + "Device id: "
+								+ nodeInfo.getDeviceNodeId() + " instance id: "
+								+ instanceId + " does not exists!");
+
+						// TODO: implement device removal here
+					}
+				}
+			}
+			else
+			{
+				logger.error(ZWaveDriverImpl.LOG_ID+ "Device id: "
+						+ nodeInfo.getDeviceNodeId() + " does not exists!");
+			}
+		}
+		finally
+		{
+			if (driver != null)
+				driver.endNotificationCycle(this.notificationPipeline, done);
+			else
+				done.run();
+		}
+	}
+
+	/**
+	 * Checks the data points subscribed for the given device instance and
+	 * notifies the changed ones
+	 * 
+	 * @param nodeId
+	 * @param instanceId
+	 * @param instanceNode
+	 */
+	private void checkDataPoints(int nodeId, int instanceId,
+			Instance instanceNode)
+	{
+		List<DataPointSubscription> instanceSubscriptions = this.subscriptions
+				.get(ZWaveNetworkHandlerImpl.instanceKey(nodeId, instanceId));
+
+		if (instanceSubscriptions != null)
+		{
+			for (DataPointSubscription subscription : instanceSubscriptions)
+			{
+				try
+				{
+					subscription.check(instanceNode);
+				}
+				catch (Exception e)
+				{
+					logger.error(ZWaveDriverImpl.LOG_ID
+							+ "Error while notifying data point "
+							+ subscription.dataPoint, e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void subscribe(ZWaveDataPoint dataPoint,
+			ZWaveDataPointListener listener)
+	{
+		if ((dataPoint != null) && (listener != null))
+		{
+			Integer key = ZWaveNetworkHandlerImpl.instanceKey(
+					dataPoint.getNodeId(), dataPoint.getInstanceId());
+
+			List<DataPointSubscription> instanceSubscriptions = this.subscriptions
+					.get(key);
+
+			if (instanceSubscriptions == null)
+			{
+				instanceSubscriptions = new CopyOnWriteArrayList<DataPointSubscription>();
+				List<DataPointSubscription> existing = this.subscriptions
+						.putIfAbsent(key, instanceSubscriptions);
+				if (existing != null)
+					instanceSubscriptions = existing;
+			}
+
+			instanceSubscriptions
+					.add(new DataPointSubscription(dataPoint, listener));
+		}
+	}
+
+	@Override
+	public void unsubscribe(ZWaveDataPoint dataPoint,
+			ZWaveDataPointListener listener)
+	{
+		if (dataPoint != null)
+		{
+			List<DataPointSubscription> instanceSubscriptions = this.subscriptions
+					.get(ZWaveNetworkHandlerImpl.instanceKey(
+							dataPoint.getNodeId(), dataPoint.getInstanceId()));
+
+			if (instanceSubscriptions != null)
+			{
+				for (DataPointSubscription subscription : instanceSubscriptions)
+				{
+					if ((subscription.dataPoint.equals(dataPoint))
+							&& (subscription.listener == listener))
+						instanceSubscriptions.remove(subscription);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all the data point subscriptions of the given node
+	 * 
+	 * @param nodeId
+	 */
+	private void unsubscribeAll(int nodeId)
+	{
+		Iterator<Integer> keys = this.subscriptions.keySet().iterator();
+		while (keys.hasNext())
+		{
+			if ((keys.next().intValue() >> 8) == nodeId)
+				keys.remove();
+		}
+	}
+
+	/**
+	 * Builds the key of a device instance in the subscription index (Z-Wave
+	 * instances, i.e., multi-channel end points, never exceed 127)
+	 * 
+	 * @param nodeId
+	 * @param instanceId
+	 * @return
+	 */
+	private static Integer instanceKey(int nodeId, int instanceId)
+	{
+		return Integer.valueOf((nodeId << 8) | (instanceId & 0xFF));
+	}
+
+	public void updateSensor(ZWaveNodeInfo nodeInfo)
+	{
+		// check if the node info is registered, the model available and the
+		// gateway reachable (no sensor update is sent to a dead gateway)...
+		ZWaveModelTree currentTree = this.conManager.getModelTree();
+		if ((this.nodeRegistry.contains(nodeInfo.getDeviceNodeId()))
+				&& (currentTree != null) && (this.conManager.isAvailable()))
+		{
+			// check if the model still contains the device: in some cases
+			// device removal at the z-wave network-level may happen before
+			// than the time in which the gateway driver detects it.
+			Device deviceNode = currentTree.getDevices()
+					.get(nodeInfo.getDeviceNodeId());
+
+			if (deviceNode != null)
+			{
+				try
+				{
+					// a sleeping node would only get the commands at its
+					// next wake up, therefore defer them until then, once.
+					if (this.isSleeping(deviceNode))
+					{
+						if (this.deferredUpdates.add(nodeInfo))
+							logger.debug(ZWaveDriverImpl.LOG_ID
+									+ "Device id: "
+									+ nodeInfo.getDeviceNodeId()
+									+ " is sleeping, update deferred");
+					}
+					else
+						this.sendSensorUpdate(nodeInfo);
+				}
+				catch (Exception e)
+				{
+					logger.error(ZWaveDriverImpl.LOG_ID
+							+ "Can't update device id: "
+							+ nodeInfo.getDeviceNodeId(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends one update command per each command class to trigger for the
+	 * given node, without waiting for the answers and without blocking the
+	 * caller: the commands of the node are paced together, and sent at once,
+	 * so that they reach the gateway in a single request. The update is
+	 * skipped if the node already has one waiting, or if the commands could
+	 * only be sent more than a polling time from now, so that the backlog of
+	 * sensor updates stays bounded when they are requested faster than the
+	 * allowed rate.
+	 * 
+	 * @param nodeInfo
+	 */
+	private void sendSensorUpdate(ZWaveNodeInfo nodeInfo)
+	{
+		final Integer nodeId = nodeInfo.getDeviceNodeId();
+
+		final List<String> commands = new ArrayList<String>();
+		for (Entry<Integer, Set<Integer>> instanceCC : nodeInfo
+				.getInstanceSensorCC().entrySet())
+		{
+			for (Integer ccToTrigger : instanceCC.getValue())
+			{
+				commands.add("devices[" + nodeInfo.getDeviceNodeId()
+						+ "].instances[" + instanceCC.getKey()
+						+ "].commandClasses[" + ccToTrigger + "].Get()");
+			}
+		}
+
+		if (commands.isEmpty())
+			return;
+
+		// the update already waiting will get the latest values as well
+		if (!this.pendingUpdates.add(nodeId))
+		{
+			this.skippedUpdates.incrementAndGet();
+			return;
+		}
+
+		// pace the radio traffic, reserving the tokens of all the commands,
+		// at most a polling time ahead
+		long waitNanos = this.pollLimiter.tryReserve(commands.size(),
+				TimeUnit.MILLISECONDS.toNanos(this.pollingTimeMillis));
+
+		if (waitNanos < 0)
+		{
+			this.pendingUpdates.remove(nodeId);
+			this.skippedUpdates.incrementAndGet();
+			logger.debug(ZWaveDriverImpl.LOG_ID + "Sensor update of device id: "
+					+ nodeId + " skipped, too many updates waiting");
+			return;
+		}
+
+		if (waitNanos == 0)
+		{
+			this.pendingUpdates.remove(nodeId);
+			this.sendSensorCommands(commands);
+			return;
+		}
 
+		// send the commands once the reserved tokens are available
+		CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS)
+				.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						pendingUpdates.remove(nodeId);
+						sendSensorCommands(commands);
 					}
+				});
+	}
+
+	/**
+	 * Sends the given sensor update commands, logging failures
+	 * 
+	 * @param commands
+	 */
+	private void sendSensorCommands(List<String> commands)
+	{
+		for (String command : commands)
+		{
+			// sensor updates never delay user commands
+			this.logFailure(this.conManager.sendCommandAsync(command, false));
+		}
+	}
+
+	/**
+	 * Sends the deferred sensor updates of the changed nodes which are now
+	 * awake, drops those of nodes no more available.
+	 * 
+	 * @param tree
+	 *            the current model tree
+	 * @param changes
+	 *            the changes since the last dispatch
+	 */
+	private void flushDeferredUpdates(ZWaveModelTree tree, ZWaveModelChanges changes)
+	{
+		Iterator<ZWaveNodeInfo> deferred = this.deferredUpdates.iterator();
+		while (deferred.hasNext())
+		{
+			ZWaveNodeInfo nodeInfo = deferred.next();
+
+			// the wake up is notified by a change of the device data
+			if (changes.isDeviceChanged(nodeInfo.getDeviceNodeId()))
+			{
+				Device deviceNode = tree.getDevices()
+						.get(nodeInfo.getDeviceNodeId());
+
+				if ((deviceNode == null)
+						|| (!this.nodeRegistry
+								.contains(nodeInfo.getDeviceNodeId())))
+					deferred.remove();
+				else if (!this.isSleeping(deviceNode))
+				{
+					deferred.remove();
+					this.sendSensorUpdate(nodeInfo);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Checks if the given node is a battery node currently sleeping, i.e., a
+	 * node neither listening nor frequently listening (FLiRS), which wakes up
+	 * periodically, and is not awake now.
+	 * 
+	 * @param deviceNode
+	 * @return true if the node is sleeping
+	 */
+	private boolean isSleeping(Device deviceNode)
+	{
+		return (deviceNode.getZeroInstance() != null)
+				&& deviceNode.hasWakeup() && !deviceNode.isListening()
+				&& !deviceNode.isFLiRS() && !deviceNode.isAwake();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -355,15 +1047,7 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 				+ " instancesId: " + lstInstanceNodeId.toString());
 
 		// adds a given register-driver association
-		nodeInfo2Driver.put(nodeInfo, driver);
-
-		// fills the reverse map
-		ZWaveNodeInfo registeredNodeInfo = driver2NodeInfo.get(driver);
-		if (registeredNodeInfo == null)
-		{
-			// create the new entry associated to the driver
-			driver2NodeInfo.put(driver, nodeInfo);
-		}
+		nodeRegistry.put(nodeInfo, driver);
 
 		// add a new device to the thread that is the responsible for device
 		// update
@@ -381,31 +1065,22 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 
 	public void removeDriver(ZWaveNodeInfo nodeInfo)
 	{
-		// removes a given register-driver association
-		ZWaveDriverInstance drv = nodeInfo2Driver.remove(nodeInfo);
-
-		// if actually a driver was registered for the given nodeInfo (local to
-		// the handled gateway), remove it
-		if (drv != null)
+		// removes a given register-driver association, if the node has not
+		// been taken over by another driver meanwhile
+		if (nodeRegistry.remove(nodeInfo.getDeviceNodeId(), nodeInfo) != null)
 		{
-			driver2NodeInfo.remove(drv);
+			// remove the subscriptions of the node
+			this.unsubscribeAll(nodeInfo.getDeviceNodeId());
+
+			// and its deferred updates
+			this.deferredUpdates.remove(nodeInfo);
 		}
 	}
 
 	public void removeDriver(int nodeId)
 	{
-		ZWaveNodeInfo infoToRemove = null;
-		// look for nodeinfos
-		for (ZWaveNodeInfo info : this.nodeInfo2Driver.keySet())
-		{
-			// compare the node id, if they are equal, get the driver and ask
-			// for the device uri
-			if (info.getDeviceNodeId() == nodeId)
-			{
-				infoToRemove = info;
-				break;
-			}
-		}
+		// the node info registered for the node id, if any
+		ZWaveNodeInfo infoToRemove = this.nodeRegistry.getNodeInfo(nodeId);
 
 		if (infoToRemove != null)
 		{
@@ -426,19 +1101,31 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 
 	public void removeDriver(ZWaveDriverInstance driver)
 	{
-		// removes a given driver-register association
-		ZWaveNodeInfo driverNodeInfo = driver2NodeInfo.remove(driver);
+		// the node handled by the driver
+		ZWaveNodeInfo nodeInfo = driver.getNodeInfo();
+
+		// removes a given driver-register association, if the node is still
+		// handled by the driver
+		ZWaveNodeInfo driverNodeInfo = (nodeInfo != null) ? nodeRegistry
+				.remove(nodeInfo.getDeviceNodeId(), driver) : null;
 
-		// remove the node info to driver associations
 		if (driverNodeInfo != null)
 		{
-			// remove the datapoint-to-driver associations
-			nodeInfo2Driver.remove(driverNodeInfo);
+			// remove the subscriptions of the node
+			this.unsubscribeAll(driverNodeInfo.getDeviceNodeId());
 		}
 	}
 
 	public void write(int deviceId, int instanceId, int nCommandClass,
 			String commandValue)
+	{
+		// do not wait for the command to complete, just log failures
+		this.logFailure(this.writeAsync(deviceId, instanceId, nCommandClass,
+				commandValue));
+	}
+
+	public CompletableFuture<String> writeAsync(int deviceId, int instanceId,
+			int nCommandClass, String commandValue)
 	{
 		try
 		{
@@ -454,29 +1141,178 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 				}
 			}
 
-			this.conManager.sendCommand("devices[" + deviceId + "].instances["
+			return this.sendCommandAsync("devices[" + deviceId + "].instances["
 					+ instanceId + "].commandClasses[" + nCommandClass
 					+ "].Set(" + commandValue + ")");
 		}
 		catch (Exception e)
 		{
-			logger.error(ZWaveDriverImpl.LOG_ID+ "Can't send command", e);
-
+			return CompletableFuture.failedFuture(e);
 		}
-
 	}
 
 	public void controllerWrite(String sCommand, String commandValue)
 	{
-		try
-		{
-			this.conManager.sendCommand(sCommand + "(" + commandValue + ")");
-		}
-		catch (Exception e)
+		// do not wait for the command to complete, just log failures
+		this.logFailure(this.controllerWriteAsync(sCommand, commandValue));
+	}
+
+	public CompletableFuture<String> controllerWriteAsync(String sCommand,
+			String commandValue)
+	{
+		return this.sendCommandAsync(sCommand + "(" + commandValue + ")");
+	}
+
+	/**
+	 * Sends the given command as soon as allowed by the user command rate
+	 * limiter, without blocking the caller
+	 * 
+	 * @param command
+	 *            the command to send
+	 * @return the future server answer
+	 */
+	private CompletableFuture<String> sendCommandAsync(final String command)
+	{
+		// pace the radio traffic
+		long waitNanos = this.commandLimiter.reserve();
+
+		if (waitNanos <= 0)
+			return this.conManager.sendCommandAsync(command);
+
+		logger.debug(ZWaveDriverImpl.LOG_ID + "Command delayed by "
+				+ TimeUnit.NANOSECONDS.toMillis(waitNanos) + " ms");
+
+		// send the command once the reserved token is available
+		return CompletableFuture
+				.supplyAsync(new Supplier<CompletableFuture<String>>()
+				{
+					@Override
+					public CompletableFuture<String> get()
+					{
+						return conManager.sendCommandAsync(command);
+					}
+				}, CompletableFuture.delayedExecutor(waitNanos,
+						TimeUnit.NANOSECONDS))
+				.thenCompose(
+						new Function<CompletableFuture<String>, CompletionStage<String>>()
+						{
+							@Override
+							public CompletionStage<String> apply(
+									CompletableFuture<String> result)
+							{
+								return result;
+							}
+						});
+	}
+
+	/**
+	 * Logs the failure of the given command, if any
+	 * 
+	 * @param result
+	 *            the future command result
+	 */
+	private void logFailure(CompletableFuture<String> result)
+	{
+		result.whenComplete(new BiConsumer<String, Throwable>()
 		{
-			logger.error(ZWaveDriverImpl.LOG_ID+ "Can't send command", e);
+			@Override
+			public void accept(String answer, Throwable error)
+			{
+				if (error == null)
+					return;
 
-		}
+				Throwable cause = ((error instanceof CompletionException)
+						&& (error.getCause() != null)) ? error.getCause()
+								: error;
+
+				// the unreachable gateway is logged by the connection manager
+				if (cause instanceof ZWaveGatewayUnavailableException)
+					logger.warn(ZWaveDriverImpl.LOG_ID + "Can't send command: "
+							+ cause.getMessage());
+				else
+					logger.error(ZWaveDriverImpl.LOG_ID + "Can't send command",
+							cause);
+			}
+		});
+	}
+
+	/**
+	 * Logs the latency of the data and command lanes towards the gateway, and
+	 * the data bytes received
+	 */
+	private void logTrafficStatistics()
+	{
+		logger.debug(ZWaveDriverImpl.LOG_ID + "Received "
+				+ this.conManager.getReceivedWireBytes() + " data bytes ("
+				+ this.conManager.getReceivedDecodedBytes() + " decoded)");
+
+		for (HttpLane lane : new HttpLane[] { this.conManager.getDataLane(),
+				this.conManager.getCommandLane() })
+			logger.debug(ZWaveDriverImpl.LOG_ID + "Lane " + lane.getName()
+					+ ": " + lane.getRequestCount() + " requests, mean latency "
+					+ TimeUnit.NANOSECONDS.toMillis(lane.getMeanLatencyNanos())
+					+ " ms, max latency "
+					+ TimeUnit.NANOSECONDS.toMillis(lane.getMaxLatencyNanos())
+					+ " ms");
+
+		logger.debug(ZWaveDriverImpl.LOG_ID + "Sensor updates: mean wait "
+				+ TimeUnit.NANOSECONDS.toMillis(this.pollLimiter.getMeanWaitNanos())
+				+ " ms, max wait "
+				+ TimeUnit.NANOSECONDS.toMillis(this.pollLimiter.getMaxWaitNanos())
+				+ " ms, " + this.skippedUpdates.get() + " skipped");
+
+		logger.debug(ZWaveDriverImpl.LOG_ID + "User commands: mean wait "
+				+ TimeUnit.NANOSECONDS.toMillis(this.commandLimiter.getMeanWaitNanos())
+				+ " ms, max wait "
+				+ TimeUnit.NANOSECONDS.toMillis(this.commandLimiter.getMaxWaitNanos())
+				+ " ms");
+
+		logger.debug(ZWaveDriverImpl.LOG_ID + "Notifications: "
+				+ this.notificationPipeline.getSubmittedBatches()
+				+ " batches, "
+				+ this.notificationPipeline.getDeliveredNotifications()
+				+ " notifications and "
+				+ this.notificationPipeline.getDeliveredStatusUpdates()
+				+ " status updates delivered, "
+				+ this.notificationPipeline.getPendingBatches()
+				+ " batches pending, "
+				+ this.notificationPipeline.getOverflows() + " overflows");
+	}
+
+	/**
+	 * @return the pipeline delivering the driver notifications, with
+	 *         statistics about the deliveries
+	 */
+	public ZWaveNotificationPipeline getNotificationPipeline()
+	{
+		return this.notificationPipeline;
+	}
+
+	/**
+	 * @return the number of sensor updates skipped, as the node already had
+	 *         one waiting or the rate limiter was too far behind
+	 */
+	public long getSkippedUpdates()
+	{
+		return this.skippedUpdates.get();
+	}
+
+	/**
+	 * @return the rate limiter of sensor update commands, with statistics
+	 *         about the time spent waiting
+	 */
+	public TokenBucket getPollLimiter()
+	{
+		return this.pollLimiter;
+	}
+
+	/**
+	 * @return the rate limiter of user commands, with statistics about the
+	 *         time spent waiting
+	 */
+	public TokenBucket getCommandLimiter()
+	{
+		return this.commandLimiter;
 	}
 
 	/**
@@ -485,7 +1321,8 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 	 */
 	public Map<Integer, Device> getRawDevices()
 	{
-		return this.modelTree.getDevices();
+		ZWaveModelTree tree = (this.conManager != null) ? this.conManager.getModelTree() : null;
+		return (tree != null) ? tree.getDevices() : null;
 	}
 
 	/**
@@ -495,7 +1332,8 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 	 */
 	public Device getRawDevice(int nodeId)
 	{
-		return this.modelTree.getDevices().get(Integer.valueOf(nodeId));
+		Map<Integer, Device> devices = this.getRawDevices();
+		return (devices != null) ? devices.get(Integer.valueOf(nodeId)) : null;
 	}
 
 	/**
@@ -507,27 +1345,11 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 	 */
 	public String getControllableDeviceURIFromNodeId(int nodeId)
 	{
-		String deviceId = null;
+		// the driver currently connected to the device
+		ZWaveDriverInstance driver = this.nodeRegistry.getDriver(nodeId);
 
-		// look for nodeinfos
-		for (ZWaveNodeInfo info : this.nodeInfo2Driver.keySet())
-		{
-			// compare the node id, if they are equal, get the driver and ask
-			// for the device uri
-			if (info.getDeviceNodeId() == nodeId)
-			{
-				// the driver currently connected to the device
-				ZWaveDriverInstance driver = this.nodeInfo2Driver.get(info);
-
-				// get the device uri
-				deviceId = driver.getDevice().getDeviceId();
-
-				// break the cycle if the needed information has been found
-				break;
-			}
-		}
-
-		return deviceId;
+		// get the device uri
+		return (driver != null) ? driver.getDevice().getDeviceId() : null;
 	}
 
 	@Override
@@ -539,6 +1361,15 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 		if ((listener != null) && (this.autoDiscovery))
 		{
 			added = this.discoveryListeners.add(listener);
+
+			// the new listener gets the devices found so far at the next sync
+			if (added)
+			{
+				synchronized (this.discoveryLock)
+				{
+					this.nextRescanTime = 0;
+				}
+			}
 		}
 
 		return added;
@@ -579,91 +1410,309 @@ public class ZWaveNetworkHandlerImpl implements ZWaveNetworkHandler
 
 	}
 
-	private void zWaveNetworkSync()
+	/**
+	 * Changes the maximum rates of the commands sent to the gateway, the
+	 * commands already paced keep their send time
+	 * 
+	 * @param pollCommandsPerSecond
+	 *            the maximum rate of sensor update commands, 0 for no limit
+	 * @param userCommandsPerSecond
+	 *            the maximum rate of user commands, 0 for no limit
+	 */
+	public void setCommandRates(double pollCommandsPerSecond,
+			double userCommandsPerSecond)
 	{
-		// identify devices not present in the configuration
-		Set<ZWaveNodeInfo> unknownDevices = this.findUnknownDevices();
+		// allow bursts of one second of commands
+		this.pollLimiter.setRate(pollCommandsPerSecond,
+				(int) pollCommandsPerSecond);
+		this.commandLimiter.setRate(userCommandsPerSecond,
+				(int) userCommandsPerSecond);
+	}
 
-		// notify the listener for discovered devices, notification is
-		// asynchronous to avoid inserting delays / blocking sections in
-		// the read method.
-		for (ZWaveNodeInfo unknownDevice : unknownDevices)
+	/**
+	 * Notifies the discovery listeners about the devices present at the ZWave
+	 * network level but not configured (unknown), and about the devices
+	 * configured but not present (not existing). Only changes of the node ids
+	 * present or configured since the last sync are notified, all the
+	 * unknown and not existing devices are notified again every
+	 * {@link #DISCOVERY_RESCAN_MILLIS}.
+	 * 
+	 * @param tree
+	 *            the current model tree
+	 */
+	private void zWaveNetworkSync(ZWaveModelTree tree)
+	{
+		synchronized (this.discoveryLock)
 		{
-			int nodeId = unknownDevice.getDeviceNodeId();
-			this.deviceNotificationService
-					.submit(new NotifyUnknownDeviceTask(this.discoveryListeners,
-							this.getRawDevice(nodeId), nodeId));
+			// the node ids currently present and configured
+			this.networkNodes.clear();
+			for (Integer nodeId : tree.getDevices().keySet())
+				this.networkNodes.set(nodeId);
+
+			this.registeredNodes.clear();
+			for (int nodeId = 0; nodeId < this.nodeRegistry
+					.getCapacity(); nodeId++)
+			{
+				if (this.nodeRegistry.contains(nodeId))
+					this.registeredNodes.set(nodeId);
+			}
+
+			long now = System.currentTimeMillis();
+			boolean rescan = (now - this.nextRescanTime >= 0);
+
+			// nothing to do if nothing changed
+			if ((!rescan) && (this.networkNodes.equals(this.syncedNetworkNodes))
+					&& (this.registeredNodes
+							.equals(this.syncedRegisteredNodes)))
+				return;
+
+			// identify devices not present in the configuration
+			BitSet unknownDevices = this.findUnknownDevices(rescan);
+
+			// notify the listener for discovered devices, notification is
+			// asynchronous to avoid inserting delays / blocking sections in
+			// the read method.
+			for (int nodeId = unknownDevices.nextSetBit(0); nodeId >= 0; nodeId = unknownDevices
+					.nextSetBit(nodeId + 1))
+			{
+				this.notifyDiscovery(nodeId, this.pendingUnknown,
+						new NotifyUnknownDeviceTask(this.discoveryListeners,
+								tree.getDevices().get(nodeId), nodeId));
+			}
+
+			// identify devices not present at the ZWave network level
+			BitSet knownButNotPresent = this.findNotExistingDevices(rescan);
+
+			// notify the listener for not existing devices, notification is
+			// asynchronous to avoid inserting delays / blocking sections in
+			// the read method.
+			for (int nodeId = knownButNotPresent.nextSetBit(0); nodeId >= 0; nodeId = knownButNotPresent
+					.nextSetBit(nodeId + 1))
+			{
+				this.notifyDiscovery(nodeId, this.pendingNotExisting,
+						new NotifyNotExistingDeviceTask(this.discoveryListeners,
+								tree.getDevices().get(nodeId), nodeId));
+			}
+
+			// the current sets become the synced ones, the old ones are
+			// reused as scratch sets
+			BitSet synced = this.syncedNetworkNodes;
+			this.syncedNetworkNodes = this.networkNodes;
+			this.networkNodes = synced;
+
+			synced = this.syncedRegisteredNodes;
+			this.syncedRegisteredNodes = this.registeredNodes;
+			this.registeredNodes = synced;
+
+			if (rescan)
+				this.nextRescanTime = now + DISCOVERY_RESCAN_MILLIS;
 		}
+	}
 
-		// identify devices not present at the ZWave network level
-		Set<ZWaveNodeInfo> knownButNotPresent = this.findNotExistingDevices();
+	/**
+	 * Submits a discovery notification, unless a notification for the same
+	 * node is already waiting to be delivered, must be called holding the
+	 * discovery lock
+	 * 
+	 * @param nodeId
+	 *            the node id
+	 * @param pending
+	 *            the nodes with a pending notification of the same kind
+	 * @param task
+	 *            the notification task
+	 */
+	private void notifyDiscovery(final int nodeId, final BitSet pending,
+			final Runnable task)
+	{
+		if (pending.get(nodeId))
+			return;
 
-		// notify the listener for not existing devices, notification is
-		// asynchronous to avoid inserting delays / blocking sections in
-		// the read method.
-		for (ZWaveNodeInfo notExistingDevice : knownButNotPresent)
+		try
 		{
-			int nodeId = notExistingDevice.getDeviceNodeId();
-			this.deviceNotificationService.submit(
-					new NotifyNotExistingDeviceTask(this.discoveryListeners,
-							this.getRawDevice(nodeId), nodeId));
+			this.deviceNotificationService.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					synchronized (discoveryLock)
+					{
+						pending.clear(nodeId);
+					}
+
+					task.run();
+				}
+			});
+
+			pending.set(nodeId);
+		}
+		catch (RejectedExecutionException e)
+		{
+			// the queue is full, the node is notified at the next rescan
+			logger.debug(ZWaveDriverImpl.LOG_ID
+					+ "Discovery notification queue full, node " + nodeId
+					+ " will be notified later");
 		}
+	}
 
+	/**
+	 * Finds the devices present at the ZWave network level but not
+	 * configured, must be called holding the discovery lock
+	 * 
+	 * @param all
+	 *            true to get all the unknown devices, false to get only those
+	 *            not unknown at the last sync
+	 * @return the node ids of the unknown devices
+	 */
+	private BitSet findUnknownDevices(boolean all)
+	{
+		// the devices present but not configured
+		BitSet unknownDevices = (BitSet) this.networkNodes.clone();
+		unknownDevices.andNot(this.registeredNodes);
+
+		if (!all)
+		{
+			// the devices already unknown at the last sync
+			BitSet syncedUnknown = (BitSet) this.syncedNetworkNodes.clone();
+			syncedUnknown.andNot(this.syncedRegisteredNodes);
+
+			unknownDevices.andNot(syncedUnknown);
+		}
+
+		return unknownDevices;
 	}
 
-	private Set<ZWaveNodeInfo> findUnknownDevices()
+	/**
+	 * Finds the devices that drivers have "added" to the set of devices to be
+	 * polled by this handler, but that do not exist at the ZWave network
+	 * level. If any of these devices are found, then there is likely some
+	 * misalignment between the Dog environment configuration and the actual
+	 * ZWave network. Must be called holding the discovery lock.
+	 * 
+	 * @param all
+	 *            true to get all the not existing devices, false to get only
+	 *            those existing at the last sync
+	 * @return the node ids of the not existing devices
+	 */
+	private BitSet findNotExistingDevices(boolean all)
 	{
-		// prepare the set of unknown devices
-		HashSet<ZWaveNodeInfo> unknownDevices = new HashSet<ZWaveNodeInfo>();
+		// the devices configured but not present
+		BitSet notExistingDevices = (BitSet) this.registeredNodes.clone();
+		notExistingDevices.andNot(this.networkNodes);
 
-		// get all the devices in the current model tree
-		Map<Integer, Device> allDevices = this.modelTree.getDevices();
+		if (!all)
+		{
+			// the devices already not existing at the last sync
+			BitSet syncedNotExisting = (BitSet) this.syncedRegisteredNodes
+					.clone();
+			syncedNotExisting.andNot(this.syncedNetworkNodes);
+
+			notExistingDevices.andNot(syncedNotExisting);
+		}
 
-		// iterate over the keys
-		for (Integer nodeId : allDevices.keySet())
+		return notExistingDevices;
+	}
+
+	/**
+	 * A dispatch of a node waiting to run, guarded by the map of the pending
+	 * dispatches
+	 */
+	private static class PendingDispatch
+	{
+		// the model tree to read
+		private ZWaveModelTree tree;
+
+		// the node to dispatch
+		private ZWaveNodeInfo nodeInfo;
+
+		// the instances to dispatch, null if all
+		private Set<Integer> instances;
+
+		public PendingDispatch(ZWaveModelTree tree, ZWaveNodeInfo nodeInfo,
+				Set<Integer> instances)
 		{
-			// build a ZWaveNodeInfo representing the device
-			// TODO check how a node info is usually created and if it is worth
-			// creating it here
-			ZWaveNodeInfo nodeInfo = new ZWaveNodeInfo(this.gatewayEndpointURL,
-					nodeId, null, false);
+			this.tree = tree;
+			this.nodeInfo = nodeInfo;
+			this.instances = instances;
+		}
 
-			// check if the node info is in the set of configured devices
-			if (!this.nodeInfo2Driver.containsKey(nodeInfo))
-			{
-				// the node is not yet configured and should be discovered
-				unknownDevices.add(nodeInfo);
-			}
+		/**
+		 * Merges a later dispatch of the same node
+		 * 
+		 * @param tree
+		 * @param nodeInfo
+		 * @param instances
+		 */
+		public void merge(ZWaveModelTree tree, ZWaveNodeInfo nodeInfo,
+				Set<Integer> instances)
+		{
+			// keep the latest model tree
+			if (tree.getGeneration() - this.tree.getGeneration() >= 0)
+				this.tree = tree;
+
+			this.nodeInfo = nodeInfo;
+
+			if ((this.instances == null) || (instances == null))
+				this.instances = null;
+			else
+				this.instances.addAll(instances);
 		}
-		return unknownDevices;
 	}
 
-	private Set<ZWaveNodeInfo> findNotExistingDevices()
+	/**
+	 * A data point subscription, keeps the last notified value and update time
+	 * 
+	 * @author bonino
+	 *
+	 */
+	private static class DataPointSubscription
 	{
-		// prepare the set of devices that drivers have "added" to the set of
-		// devices to be polled by this handler, but that do not exist at the
-		// ZWave network level. If any of these devices are found, then there is
-		// likely some misalignment between the Dog environment configuration
-		// and the actual ZWave network.
-		Set<ZWaveNodeInfo> notExistingDevices = new HashSet<ZWaveNodeInfo>();
+		// the watched data point
+		private final ZWaveDataPoint dataPoint;
+
+		// the listener to notify
+		private final ZWaveDataPointListener listener;
 
-		// the set of devices currently "visible" at the ZWave network level
-		Map<Integer, Device> deviceAtZwaveNetwork = this.modelTree.getDevices();
+		// the last notified value
+		private double value = Double.NaN;
 
-		// iterate over all "registered devices"
-		for (ZWaveNodeInfo device : this.nodeInfo2Driver.keySet())
+		// the last notified update time
+		private long updateTime = 0;
+
+		public DataPointSubscription(ZWaveDataPoint dataPoint,
+				ZWaveDataPointListener listener)
 		{
-			// search for the device in the model tree
-			if (!deviceAtZwaveNetwork.containsKey(device.getDeviceNodeId()))
+			this.dataPoint = dataPoint;
+			this.listener = listener;
+		}
+
+		/**
+		 * Notifies the listener if the data point got a different value or a
+		 * newer update time in the given instance node
+		 * 
+		 * @param instanceNode
+		 */
+		public synchronized void check(Instance instanceNode)
+		{
+			DataElemObject elem = this.dataPoint.resolve(instanceNode);
+
+			if (elem != null)
 			{
-				// the device is not "known" at the ZWave network and therefore
-				// shall be collected for potential removal.
-				notExistingDevices.add(device);
+				double newValue = elem.getValueAsDouble();
+				long newUpdateTime = elem.getUpdateTime();
+
+				if ((!Double.isNaN(newValue))
+						&& ((newUpdateTime > this.updateTime) || (Double
+								.compare(newValue, this.value) != 0)))
+				{
+					double oldValue = this.value;
+
+					this.value = newValue;
+					this.updateTime = newUpdateTime;
+
+					this.listener.dataPointChanged(this.dataPoint, oldValue,
+							newValue, newUpdateTime);
+				}
 			}
 		}
-
-		// return the set of devices that are not existing at the zwave network,
-		// or null if no unknown devices are found.
-		return notExistingDevices;
 	}
 }
@@ -0,0 +1,172 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.network;
+
+/**
+ * The settings of a {@link ZWaveNetworkHandlerImpl}, each one initially at
+ * its default value. The handler reads them once, when created.
+ */
+public class ZWaveNetworkHandlerSettings
+{
+	// the polling time
+	private int pollingTimeMillis = ZWaveNetworkHandlerImpl.DEFAULT_POLLING_TIME_MILLIS;
+
+	// the auto-discovery flag
+	private boolean autoDiscovery = false;
+
+	// the maximum rates of sensor update and user commands
+	private double pollCommandsPerSecond = ZWaveNetworkHandlerImpl.DEFAULT_POLL_COMMANDS_PER_SECOND;
+	private double userCommandsPerSecond = ZWaveNetworkHandlerImpl.DEFAULT_USER_COMMANDS_PER_SECOND;
+
+	// the number of consecutive failures after which the gateway is
+	// considered unreachable
+	private int numTry = ZWaveNetworkHandlerImpl.DEFAULT_NUM_TRY;
+
+	// the time between the first two connection trials to an unreachable
+	// gateway
+	private long betweenTrialTimeMillis = ZWaveNetworkHandlerImpl.DEFAULT_BETWEEN_TRIAL_TIME_MILLIS;
+
+	// the projected model flag
+	private boolean projectedModel = false;
+
+	/**
+	 * @return the polling time, in milliseconds
+	 */
+	public int getPollingTimeMillis()
+	{
+		return this.pollingTimeMillis;
+	}
+
+	/**
+	 * @param pollingTimeMillis
+	 *            the polling time, in milliseconds
+	 */
+	public void setPollingTimeMillis(int pollingTimeMillis)
+	{
+		this.pollingTimeMillis = pollingTimeMillis;
+	}
+
+	/**
+	 * @return true if the devices on the network are discovered
+	 */
+	public boolean isAutoDiscovery()
+	{
+		return this.autoDiscovery;
+	}
+
+	/**
+	 * @param autoDiscovery
+	 *            true to discover the devices on the network
+	 */
+	public void setAutoDiscovery(boolean autoDiscovery)
+	{
+		this.autoDiscovery = autoDiscovery;
+	}
+
+	/**
+	 * @return the maximum rate of sensor update commands, 0 for no limit
+	 */
+	public double getPollCommandsPerSecond()
+	{
+		return this.pollCommandsPerSecond;
+	}
+
+	/**
+	 * @param pollCommandsPerSecond
+	 *            the maximum rate of sensor update commands, 0 for no limit
+	 */
+	public void setPollCommandsPerSecond(double pollCommandsPerSecond)
+	{
+		this.pollCommandsPerSecond = pollCommandsPerSecond;
+	}
+
+	/**
+	 * @return the maximum rate of user commands, 0 for no limit
+	 */
+	public double getUserCommandsPerSecond()
+	{
+		return this.userCommandsPerSecond;
+	}
+
+	/**
+	 * @param userCommandsPerSecond
+	 *            the maximum rate of user commands, 0 for no limit
+	 */
+	public void setUserCommandsPerSecond(double userCommandsPerSecond)
+	{
+		this.userCommandsPerSecond = userCommandsPerSecond;
+	}
+
+	/**
+	 * @return the number of consecutive failed requests after which the
+	 *         gateway is considered unreachable
+	 */
+	public int getNumTry()
+	{
+		return this.numTry;
+	}
+
+	/**
+	 * @param numTry
+	 *            the number of consecutive failed requests after which the
+	 *            gateway is considered unreachable
+	 */
+	public void setNumTry(int numTry)
+	{
+		this.numTry = numTry;
+	}
+
+	/**
+	 * @return the time between the first two connection trials to an
+	 *         unreachable gateway, doubled after each failed trial
+	 */
+	public long getBetweenTrialTimeMillis()
+	{
+		return this.betweenTrialTimeMillis;
+	}
+
+	/**
+	 * @param betweenTrialTimeMillis
+	 *            the time between the first two connection trials to an
+	 *            unreachable gateway, doubled after each failed trial
+	 */
+	public void setBetweenTrialTimeMillis(long betweenTrialTimeMillis)
+	{
+		this.betweenTrialTimeMillis = betweenTrialTimeMillis;
+	}
+
+	/**
+	 * @return true if only the devices handled by registered drivers are
+	 *         built when the network tree is downloaded
+	 */
+	public boolean isProjectedModel()
+	{
+		return this.projectedModel;
+	}
+
+	/**
+	 * @param projectedModel
+	 *            if true, only the devices handled by registered drivers are
+	 *            built when the network tree is downloaded, the others are
+	 *            built when first needed (e.g., by discovery)
+	 */
+	public void setProjectedModel(boolean projectedModel)
+	{
+		this.projectedModel = projectedModel;
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.network;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import it.polito.elite.dog.drivers.zwave.network.info.ZWaveNodeInfo;
+
+/**
+ * The registry of the nodes handled by a network handler, i.e., of the
+ * {@link ZWaveNodeInfo} and of the {@link ZWaveDriverInstance} registered for
+ * each node. Node ids are small integers (1 to 232 on a Z-Wave network),
+ * therefore nodes are kept in an array indexed by node id: lookups by node id
+ * are constant time, with no boxing and no scan. The array grows if a larger
+ * node id is ever registered.
+ *
+ * Reads are lock-free, while registrations and removals are serialized.
+ */
+public class ZWaveNodeRegistry
+{
+	// the initial capacity, covering all the Z-Wave node ids
+	private static final int INITIAL_CAPACITY = 256;
+
+	// the registered nodes, indexed by node id
+	private volatile AtomicReferenceArray<Node> nodes;
+
+	// the number of registered nodes
+	private volatile int size = 0;
+
+	/**
+	 * Creates a new, empty, registry
+	 */
+	public ZWaveNodeRegistry()
+	{
+		this.nodes = new AtomicReferenceArray<Node>(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Registers the driver handling the given node, replacing the one
+	 * previously registered for the same node id, if any
+	 *
+	 * @param nodeInfo
+	 *            the node
+	 * @param driver
+	 *            the driver handling the node
+	 * @return the driver previously registered for the node id, or null
+	 */
+	public synchronized ZWaveDriverInstance put(ZWaveNodeInfo nodeInfo,
+			ZWaveDriverInstance driver)
+	{
+		int nodeId = nodeInfo.getDeviceNodeId();
+		if (nodeId < 0)
+			throw new IllegalArgumentException("Invalid node id: " + nodeId);
+
+		// grow the array, if needed
+		if (nodeId >= this.nodes.length())
+		{
+			AtomicReferenceArray<Node> grown = new AtomicReferenceArray<Node>(
+					Math.max(nodeId + 1, this.nodes.length() * 2));
+			for (int i = 0; i < this.nodes.length(); i++)
+				grown.set(i, this.nodes.get(i));
+			this.nodes = grown;
+		}
+
+		Node previous = this.nodes.getAndSet(nodeId,
+				new Node(nodeInfo, driver));
+		if (previous == null)
+		{
+			this.size++;
+			return null;
+		}
+
+		return previous.driver;
+	}
+
+	/**
+	 * Removes the node with the given id
+	 *
+	 * @param nodeId
+	 * @return the node info previously registered, or null
+	 */
+	public synchronized ZWaveNodeInfo remove(int nodeId)
+	{
+		Node node = this.getNode(nodeId);
+		if (node == null)
+			return null;
+
+		this.nodes.set(nodeId, null);
+		this.size--;
+		return node.nodeInfo;
+	}
+
+	/**
+	 * Removes the node with the given id, only if handled by the given driver
+	 *
+	 * @param nodeId
+	 * @param driver
+	 * @return the node info previously registered, or null if the node is not
+	 *         handled by the driver
+	 */
+	public synchronized ZWaveNodeInfo remove(int nodeId,
+			ZWaveDriverInstance driver)
+	{
+		Node node = this.getNode(nodeId);
+		if ((node == null) || (node.driver != driver))
+			return null;
+
+		return this.remove(nodeId);
+	}
+
+	/**
+	 * Removes the node with the given id, only if registered with the given
+	 * node info, i.e., not replaced by another driver meanwhile
+	 *
+	 * @param nodeId
+	 * @param nodeInfo
+	 * @return the node info previously registered, or null if the node is
+	 *         registered with another node info
+	 */
+	public synchronized ZWaveNodeInfo remove(int nodeId,
+			ZWaveNodeInfo nodeInfo)
+	{
+		Node node = this.getNode(nodeId);
+		if ((node == null) || (node.nodeInfo != nodeInfo))
+			return null;
+
+		return this.remove(nodeId);
+	}
+
+	/**
+	 * @param nodeId
+	 * @return true if a node with the given id is registered
+	 */
+	public boolean contains(int nodeId)
+	{
+		return this.getNode(nodeId) != null;
+	}
+
+	/**
+	 * @param nodeId
+	 * @return the registered node info, or null
+	 */
+	public ZWaveNodeInfo getNodeInfo(int nodeId)
+	{
+		Node node = this.getNode(nodeId);
+		return (node != null) ? node.nodeInfo : null;
+	}
+
+	/**
+	 * @param nodeId
+	 * @return the driver handling the node, or null
+	 */
+	public ZWaveDriverInstance getDriver(int nodeId)
+	{
+		Node node = this.getNode(nodeId);
+		return (node != null) ? node.driver : null;
+	}
+
+	/**
+	 * The upper bound of the registered node ids, to iterate over the nodes
+	 * as in:
+	 *
+	 * <pre>
+	 * for (int nodeId = 0; nodeId &lt; registry.getCapacity(); nodeId++)
+	 * {
+	 * 	ZWaveNodeInfo nodeInfo = registry.getNodeInfo(nodeId);
+	 * 	if (nodeInfo != null)
+	 * 		...
+	 * }
+	 * </pre>
+	 *
+	 * @return the number of node ids the registry can currently hold
+	 */
+	public int getCapacity()
+	{
+		return this.nodes.length();
+	}
+
+	/**
+	 * @return the number of registered nodes
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * @return true if no node is registered
+	 */
+	public boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+
+	/**
+	 * @param nodeId
+	 * @return the registered node, or null
+	 */
+	private Node getNode(int nodeId)
+	{
+		AtomicReferenceArray<Node> current = this.nodes;
+		return ((nodeId >= 0) && (nodeId < current.length()))
+				? current.get(nodeId) : null;
+	}
+
+	/**
+	 * A registered node, immutable so that node info and driver are always
+	 * read consistently
+	 */
+	private static class Node
+	{
+		private final ZWaveNodeInfo nodeInfo;
+		private final ZWaveDriverInstance driver;
+
+		public Node(ZWaveNodeInfo nodeInfo, ZWaveDriverInstance driver)
+		{
+			this.nodeInfo = nodeInfo;
+			this.driver = driver;
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.network;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.osgi.service.log.Logger;
+
+import it.polito.elite.dog.drivers.zwave.util.KeyedSerialExecutor;
+
+/**
+ * Delivers the notifications of driver instances to the Dog core, off the
+ * threads reading the Z-Way server. The notifications collected by a driver
+ * during a dispatch cycle are delivered as a single batch, followed by at
+ * most one status update. Batches of different devices are delivered in
+ * parallel, batches of the same device in order.
+ *
+ * The number of batches waiting to be delivered is bounded: when the bound is
+ * reached, the dispatching thread waits for a batch to be delivered (an
+ * overflow), so that a slow Dog core slows down the dispatch instead of
+ * filling the memory.
+ */
+public class ZWaveNotificationPipeline
+{
+	// the delivery executor, keyed by node id
+	private final KeyedSerialExecutor deliveryExecutor;
+
+	// the permits of the batches waiting to be delivered
+	private final Semaphore pendingPermits;
+
+	// the maximum number of batches waiting to be delivered
+	private final int maxPendingBatches;
+
+	// the logger
+	private final Logger logger;
+
+	// the delivery statistics
+	private long submittedBatches = 0;
+	private long deliveredNotifications = 0;
+	private long deliveredStatusUpdates = 0;
+	private long overflows = 0;
+
+	/**
+	 * Creates a new pipeline
+	 *
+	 * @param nThreads
+	 *            the number of delivery threads
+	 * @param maxPendingBatches
+	 *            the maximum number of batches waiting to be delivered
+	 * @param logger
+	 *            the logger for delivery errors
+	 */
+	public ZWaveNotificationPipeline(int nThreads, int maxPendingBatches,
+			Logger logger)
+	{
+		this.deliveryExecutor = new KeyedSerialExecutor("notification",
+				nThreads);
+		this.maxPendingBatches = Math.max(1, maxPendingBatches);
+		this.pendingPermits = new Semaphore(this.maxPendingBatches);
+		this.logger = logger;
+	}
+
+	/**
+	 * Submits the notifications of a dispatch cycle, waiting if too many
+	 * batches are waiting to be delivered
+	 *
+	 * @param driver
+	 *            the notifying driver
+	 * @param notifications
+	 *            the notifications, in order
+	 * @param statusUpdate
+	 *            true if the driver status must be updated after the
+	 *            notifications
+	 * @param done
+	 *            run once the batch has been delivered, or dropped
+	 */
+	public void submit(final ZWaveDriverInstance driver,
+			final List<Runnable> notifications, final boolean statusUpdate,
+			final Runnable done)
+	{
+		if ((notifications.isEmpty()) && (!statusUpdate))
+		{
+			done.run();
+			return;
+		}
+
+		boolean overflow = !this.pendingPermits.tryAcquire();
+		if (overflow)
+		{
+			try
+			{
+				this.pendingPermits.acquire();
+			}
+			catch (InterruptedException e)
+			{
+				// do not lose the batch, deliver it on the current thread
+				Thread.currentThread().interrupt();
+				try
+				{
+					this.deliver(driver, notifications, statusUpdate);
+				}
+				finally
+				{
+					done.run();
+				}
+				return;
+			}
+		}
+		this.recordSubmission(overflow);
+
+		try
+		{
+			this.deliveryExecutor.execute(
+					driver.getNodeInfo().getDeviceNodeId(), new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							try
+							{
+								deliver(driver, notifications, statusUpdate);
+							}
+							finally
+							{
+								pendingPermits.release();
+								done.run();
+							}
+						}
+					});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// the pipeline has been shut down, drop the batch
+			this.pendingPermits.release();
+			done.run();
+		}
+	}
+
+	/**
+	 * Stops the pipeline: the batches already submitted are delivered, the
+	 * later ones are dropped
+	 */
+	public void shutdown()
+	{
+		this.deliveryExecutor.shutdown();
+	}
+
+	/**
+	 * Delivers a batch of notifications
+	 *
+	 * @param driver
+	 * @param notifications
+	 * @param statusUpdate
+	 */
+	private void deliver(ZWaveDriverInstance driver,
+			List<Runnable> notifications, boolean statusUpdate)
+	{
+		for (Runnable notification : notifications)
+		{
+			try
+			{
+				notification.run();
+			}
+			catch (Exception e)
+			{
+				this.logger.error(ZWaveDriverImpl.LOG_ID
+						+ "Error while notifying device "
+						+ driver.getDevice().getDeviceId(), e);
+			}
+		}
+
+		if (statusUpdate)
+		{
+			try
+			{
+				driver.updateStatus();
+			}
+			catch (Exception e)
+			{
+				this.logger.error(ZWaveDriverImpl.LOG_ID
+						+ "Error while updating the status of device "
+						+ driver.getDevice().getDeviceId(), e);
+			}
+		}
+
+		this.recordDelivery(notifications.size(), statusUpdate);
+	}
+
+	/**
+	 * Updates the submission statistics
+	 *
+	 * @param overflow
+	 */
+	private synchronized void recordSubmission(boolean overflow)
+	{
+		this.submittedBatches++;
+		if (overflow)
+			this.overflows++;
+	}
+
+	/**
+	 * Updates the delivery statistics
+	 *
+	 * @param notifications
+	 * @param statusUpdate
+	 */
+	private synchronized void recordDelivery(int notifications,
+			boolean statusUpdate)
+	{
+		this.deliveredNotifications += notifications;
+		if (statusUpdate)
+			this.deliveredStatusUpdates++;
+	}
+
+	/**
+	 * @return the number of batches submitted so far
+	 */
+	public synchronized long getSubmittedBatches()
+	{
+		return this.submittedBatches;
+	}
+
+	/**
+	 * @return the number of notifications delivered so far
+	 */
+	public synchronized long getDeliveredNotifications()
+	{
+		return this.deliveredNotifications;
+	}
+
+	/**
+	 * @return the number of status updates delivered so far
+	 */
+	public synchronized long getDeliveredStatusUpdates()
+	{
+		return this.deliveredStatusUpdates;
+	}
+
+	/**
+	 * @return the number of submissions which had to wait for the queue to
+	 *         have room
+	 */
+	public synchronized long getOverflows()
+	{
+		return this.overflows;
+	}
+
+	/**
+	 * @return the number of batches currently waiting to be delivered
+	 */
+	public int getPendingBatches()
+	{
+		return this.maxPendingBatches - this.pendingPermits.availablePermits();
+	}
+}
@@ -18,10 +18,14 @@
 package it.polito.elite.dog.drivers.zwave.network;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.osgi.service.log.Logger;
 
@@ -30,11 +34,22 @@ import it.polito.elite.dog.drivers.zwave.network.interfaces.ZWaveNetworkHandler;
 
 /**
  * This class implements the low-level ZWave polling Thread. Every polling time,
- * the thread checks which devices are expected to report a new value. For all
- * devices that have not yet reported a value, even if expected, a direct query
- * at the ZWay level is triggered. This overcomes wrong or misaligned
- * communication between the physical ZWave devices and the ZWay server
- * interfaced by Dog.
+ * the thread gets the latest values from the ZWay server and, for all devices
+ * expected to report a new value, triggers a direct query at the ZWay level.
+ * This overcomes wrong or misaligned communication between the physical ZWave
+ * devices and the ZWay server interfaced by Dog.
+ * 
+ * Both the network polling and the device triggers are scheduled at a fixed
+ * rate on the monotonic clock ({@link System#nanoTime()}): device triggers are
+ * kept in a queue ordered by next trigger time, so that each cycle only
+ * handles the triggers actually due, and the thread sleeps until the next one.
+ * Each node is triggered at a fixed phase within its period, depending on its
+ * node id only, so that nodes registered together are spread over the period
+ * instead of being triggered all at once.
+ * 
+ * The network polling runs on a separate thread, so that a slow answer of the
+ * ZWay server never delays the device triggers: a poll due while the previous
+ * one is still running is skipped.
  */
 public class ZWavePoller extends Thread
 {
@@ -42,17 +57,44 @@ public class ZWavePoller extends Thread
 	private ZWaveNetworkHandlerImpl driver;
 
 	// the runnable flag
-	private boolean runnable = true;
+	private volatile boolean runnable = true;
 
 	// the poller logger
 	private Logger logger;
 
 	// the polling time to use
-	private int pollingTimeMillis;
+	private volatile int pollingTimeMillis;
+
+	// the device triggers, ordered by next trigger time
+	private PriorityQueue<TriggerElem> triggerQueue;
+
+	// the device triggers, indexed by node id: removed triggers are only
+	// marked as cancelled and dropped from the queue when due
+	private TriggerElem[] nodeTriggers = new TriggerElem[256];
+
+	// the cancelled triggers still in the queue
+	private int cancelledTriggers = 0;
 
-	// set of device to trigger for update
-	public Set<TriggerElem> deviceSet = Collections
-			.newSetFromMap(new ConcurrentHashMap<TriggerElem, Boolean>());
+	// the reference time of the trigger phases
+	private final long epoch = System.nanoTime();
+
+	// the lock guarding the trigger queue, also used to wait for the next
+	// due trigger
+	private final Object queueLock = new Object();
+
+	// the lateness statistics, i.e., the delay between the scheduled and the
+	// actual execution of polls and triggers
+	private long firedCount = 0;
+	private long totalLatenessNanos = 0;
+	private long maxLatenessNanos = 0;
+
+	// the executor running the network polls, and the flag telling if a poll
+	// is running
+	private final ExecutorService pollService;
+	private final AtomicBoolean pollRunning = new AtomicBoolean();
+
+	// the polls skipped as the previous one was still running
+	private long skippedPolls = 0;
 
 	/**
 	 * The Class constructor, takes as a reference a {@link ZWaveNetworkHandler}
@@ -71,6 +113,22 @@ public class ZWavePoller extends Thread
 		// store the polling time in millis
 		this.pollingTimeMillis = pollingTimeMillis;
 
+		// create the trigger queue
+		this.triggerQueue = new PriorityQueue<TriggerElem>();
+
+		// the poll service, a single daemon thread not keeping the framework
+		// alive
+		this.pollService = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "zwave-poll");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
 		// init the logger
 		this.logger = this.driver.getLogger();
 	}
@@ -83,56 +141,265 @@ public class ZWavePoller extends Thread
 	@Override
 	public void run()
 	{
+		// the first poll is immediate
+		long nextPollTime = System.nanoTime();
+
+		// the triggers due in the current cycle
+		ArrayList<TriggerElem> dueTriggers = new ArrayList<TriggerElem>();
+
 		// run until the thread is runnable
 		while (this.runnable)
 		{
-			// log
-			this.logger.debug(ZWaveDriverImpl.LOG_ID+
-					"Starting a new polling cycle...");
-
-			// get the current time (WARNING: Locale is not considered here)
-			Date currentDate = new Date();
+			long now;
 
-			// for each driver registered
-			for (TriggerElem elem : deviceSet)
+			synchronized (this.queueLock)
 			{
-				// if its triggerTime is already past
-				if (elem.getTriggerTime() <= currentDate.getTime())
+				// wait for the next poll or trigger
+				try
 				{
-					// trigger direct device query on the ZWave network, this
-					// might "overload" the underlying network.
-					this.driver.updateSensor(elem.getNodeInfo());
-					// update value for next trigger
-					elem.setTriggerTime(
-							elem.getTriggerTime() + elem.getUpdateTimeMillis());
-
-					// yield to other processes
-					Thread.yield();
+					now = this.waitForNextDue(nextPollTime);
+				}
+				catch (InterruptedException e)
+				{
+					// log the error
+					this.logger.warn(ZWaveDriverImpl.LOG_ID
+							+ "Interrupted exception: " + e);
+					continue;
 				}
-			}
 
-			// get the latest value from the ZWave network
-			this.driver.readAll(true);
+				// collect the due triggers and schedule their next execution
+				TriggerElem elem = this.peekTrigger();
+				while ((elem != null) && (elem.getTriggerTime() - now <= 0))
+				{
+					this.triggerQueue.poll();
+					this.recordLateness(now - elem.getTriggerTime());
+					dueTriggers.add(elem);
 
-			// ok now the polling cycle has ended and the poller can sleep for
-			// the given polling time
-			try
-			{
-				Thread.sleep(this.pollingTimeMillis);
+					elem.setTriggerTime(ZWavePoller.nextTime(
+							elem.getTriggerTime(), TimeUnit.MILLISECONDS
+									.toNanos(elem.getUpdateTimeMillis()),
+							now));
+					this.triggerQueue.add(elem);
+
+					elem = this.peekTrigger();
+				}
 			}
-			catch (InterruptedException e)
+
+			// for each due trigger
+			for (TriggerElem elem : dueTriggers)
 			{
-				// log the error
-				this.logger.warn(ZWaveDriverImpl.LOG_ID+
-						"Interrupted exception: " + e);
+				// trigger direct device query on the ZWave network, this might
+				// "overload" the underlying network.
+				this.driver.updateSensor(elem.getNodeInfo());
 			}
+			dueTriggers.clear();
 
+			// poll the network, if due
+			if (nextPollTime - now <= 0)
+			{
+				// log
+				this.logger.debug(ZWaveDriverImpl.LOG_ID
+						+ "Starting a new polling cycle (mean lateness: "
+						+ TimeUnit.NANOSECONDS
+								.toMicros(this.getMeanLatenessNanos())
+						+ " us, max lateness: "
+						+ TimeUnit.NANOSECONDS
+								.toMicros(this.getMaxLatenessNanos())
+						+ " us)...");
+
+				this.recordLateness(now - nextPollTime);
+
+				// get the latest value from the ZWave network
+				this.poll();
+
+				// schedule the next poll, at a fixed rate
+				nextPollTime = ZWavePoller.nextTime(nextPollTime,
+						TimeUnit.MILLISECONDS.toNanos(this.pollingTimeMillis),
+						System.nanoTime());
+			}
 		}
 
+		// no more polls, let the running one complete
+		this.pollService.shutdown();
+
 		// auto-reset the state at runnable...
 		this.runnable = true;
 	}
 
+	/**
+	 * Gets the latest values from the ZWave network on the poll service,
+	 * unless the previous poll is still running
+	 */
+	private void poll()
+	{
+		if (!this.pollRunning.compareAndSet(false, true))
+		{
+			this.recordSkippedPoll();
+			this.logger.debug(ZWaveDriverImpl.LOG_ID
+					+ "Previous polling cycle still running, skipping this one");
+			return;
+		}
+
+		this.pollService.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					driver.readAll(true);
+				}
+				finally
+				{
+					pollRunning.set(false);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits until the next poll or device trigger is due, must be called
+	 * holding the queue lock
+	 * 
+	 * @param nextPollTime
+	 *            the time of the next poll
+	 * @return the current time
+	 * @throws InterruptedException
+	 */
+	private long waitForNextDue(long nextPollTime) throws InterruptedException
+	{
+		long now = System.nanoTime();
+
+		while (this.runnable)
+		{
+			// the next due time
+			long nextTime = nextPollTime;
+			TriggerElem elem = this.peekTrigger();
+			if ((elem != null) && (elem.getTriggerTime() - nextTime < 0))
+				nextTime = elem.getTriggerTime();
+
+			long waitNanos = nextTime - now;
+			if (waitNanos <= 0)
+				break;
+
+			// wait, a new trigger or a stop request may wake up the thread
+			// earlier
+			this.queueLock.wait(TimeUnit.NANOSECONDS.toMillis(waitNanos),
+					(int) (waitNanos % 1000000));
+
+			now = System.nanoTime();
+		}
+
+		return now;
+	}
+
+	/**
+	 * Gets the first trigger in the queue, dropping the cancelled ones, must
+	 * be called holding the queue lock
+	 * 
+	 * @return the first trigger not cancelled, or null
+	 */
+	private TriggerElem peekTrigger()
+	{
+		TriggerElem elem = this.triggerQueue.peek();
+		while ((elem != null) && (elem.isCancelled()))
+		{
+			this.triggerQueue.poll();
+			this.cancelledTriggers--;
+			elem = this.triggerQueue.peek();
+		}
+		return elem;
+	}
+
+	/**
+	 * Computes the next execution time of a fixed rate task, skipping the
+	 * executions already missed
+	 * 
+	 * @param scheduledTime
+	 *            the scheduled time of the current execution
+	 * @param periodNanos
+	 *            the task period
+	 * @param now
+	 *            the current time
+	 * @return the next execution time
+	 */
+	private static long nextTime(long scheduledTime, long periodNanos, long now)
+	{
+		long nextTime = scheduledTime + periodNanos;
+
+		// if late of one or more periods, skip them instead of bursting
+		if (nextTime - now <= 0)
+			nextTime += ((now - nextTime) / periodNanos + 1) * periodNanos;
+
+		return nextTime;
+	}
+
+	/**
+	 * Computes the phase of a node within the given period, i.e., the
+	 * fractional part of the node id times the golden ratio conjugate, which
+	 * spreads consecutive node ids evenly over the period
+	 * 
+	 * @param nodeId
+	 *            the node id
+	 * @param periodNanos
+	 *            the trigger period
+	 * @return the phase, between 0 and the period
+	 */
+	private static long phase(int nodeId, long periodNanos)
+	{
+		double fraction = (nodeId * 0.6180339887498949) % 1.0;
+		return (long) (fraction * periodNanos);
+	}
+
+	/**
+	 * Records the lateness of a poll or trigger
+	 * 
+	 * @param latenessNanos
+	 */
+	private synchronized void recordLateness(long latenessNanos)
+	{
+		this.firedCount++;
+		this.totalLatenessNanos += latenessNanos;
+		if (latenessNanos > this.maxLatenessNanos)
+			this.maxLatenessNanos = latenessNanos;
+	}
+
+	/**
+	 * Records a skipped poll
+	 */
+	private synchronized void recordSkippedPoll()
+	{
+		this.skippedPolls++;
+	}
+
+	/**
+	 * @return the number of polls skipped as the previous one was still
+	 *         running
+	 */
+	public synchronized long getSkippedPolls()
+	{
+		return this.skippedPolls;
+	}
+
+	/**
+	 * @return the mean delay between the scheduled and the actual execution of
+	 *         polls and triggers, in nanoseconds
+	 */
+	public synchronized long getMeanLatenessNanos()
+	{
+		return (this.firedCount > 0) ? this.totalLatenessNanos
+				/ this.firedCount : 0;
+	}
+
+	/**
+	 * @return the maximum delay between the scheduled and the actual execution
+	 *         of polls and triggers, in nanoseconds
+	 */
+	public synchronized long getMaxLatenessNanos()
+	{
+		return this.maxLatenessNanos;
+	}
+
 	/**
 	 * Sets the thread state at runnable (true) or not runnable(false)
 	 * 
@@ -141,6 +408,12 @@ public class ZWavePoller extends Thread
 	public void setRunnable(boolean runnable)
 	{
 		this.runnable = runnable;
+
+		// wake up the thread, if waiting
+		synchronized (this.queueLock)
+		{
+			this.queueLock.notifyAll();
+		}
 	}
 
 	/**
@@ -167,38 +440,86 @@ public class ZWavePoller extends Thread
 			updateTimeMillis = this.pollingTimeMillis;
 		}
 
-		Date date = new Date();
-		TriggerElem elem = new TriggerElem(nodeInfo,
-				date.getTime() + updateTimeMillis, updateTimeMillis);
-		deviceSet.add(elem);
+		// the first trigger time, at the node phase
+		long periodNanos = TimeUnit.MILLISECONDS.toNanos(updateTimeMillis);
+		long phaseNanos = ZWavePoller.phase(nodeInfo.getDeviceNodeId(),
+				periodNanos);
+		long triggerTime = ZWavePoller.nextTime(
+				this.epoch + phaseNanos - periodNanos, periodNanos,
+				System.nanoTime());
+
+		TriggerElem elem = new TriggerElem(nodeInfo, triggerTime,
+				updateTimeMillis);
+
+		synchronized (this.queueLock)
+		{
+			int nodeId = nodeInfo.getDeviceNodeId();
+
+			// a node has a single trigger, replace the previous one
+			this.cancelTrigger(nodeId);
+
+			if (nodeId >= this.nodeTriggers.length)
+				this.nodeTriggers = Arrays.copyOf(this.nodeTriggers,
+						Math.max(nodeId + 1, this.nodeTriggers.length * 2));
+			this.nodeTriggers[nodeId] = elem;
+
+			this.triggerQueue.add(elem);
+
+			// wake up the thread if the new trigger is the first one
+			if (this.triggerQueue.peek() == elem)
+				this.queueLock.notifyAll();
+		}
 	}
 
 	/**
 	 * Call this method to remove a device to the queue of the thread.
 	 * 
-	 * @param nodeInfo
-	 *            {@link ZWaveNodeInfo} representing the node
-	 * @param updateTimeMillis
-	 *            how much the device must be triggered for a full update. 0
-	 *            means no trigger for this node
+	 * @param nodeId
+	 *            the node id of the device
 	 */
 	public void removeDeviceFromQueue(int nodeId)
 	{
-		// the list of triggers to remove
-		ArrayList<TriggerElem> toRemove = new ArrayList<TriggerElem>();
-
-		// build the list of triggers to remove
-		for (TriggerElem elem : this.deviceSet)
-			if (elem.getNodeInfo().getDeviceNodeId() == nodeId)
-				toRemove.add(elem);
-		// remove
-		for (TriggerElem elem : toRemove)
-			this.deviceSet.remove(elem);
+		synchronized (this.queueLock)
+		{
+			this.cancelTrigger(nodeId);
+		}
+	}
+
+	/**
+	 * Cancels the trigger of the given node, if any, must be called holding
+	 * the queue lock. The trigger stays in the queue until due, unless
+	 * cancelled triggers are the majority of the queue.
+	 * 
+	 * @param nodeId
+	 *            the node id of the device
+	 */
+	private void cancelTrigger(int nodeId)
+	{
+		if ((nodeId < 0) || (nodeId >= this.nodeTriggers.length)
+				|| (this.nodeTriggers[nodeId] == null))
+			return;
+
+		this.nodeTriggers[nodeId].cancel();
+		this.nodeTriggers[nodeId] = null;
+		this.cancelledTriggers++;
+
+		// purge the queue, not to keep too many dead triggers
+		if (this.cancelledTriggers > this.triggerQueue.size() / 2)
+		{
+			Iterator<TriggerElem> elems = this.triggerQueue.iterator();
+			while (elems.hasNext())
+			{
+				if (elems.next().isCancelled())
+					elems.remove();
+			}
+			this.cancelledTriggers = 0;
+		}
 	}
 
 	/**
 	 * Setter for the polling time, allows dynamic change of polling time, while
-	 * the thread is running.
+	 * the thread is running. The new polling time applies from the next
+	 * polling cycle.
 	 * 
 	 * @param pollingTimeMillis
 	 *            The updated polling time in millis.
@@ -211,17 +532,20 @@ public class ZWavePoller extends Thread
 		}
 	}
 
-	public class TriggerElem
+	public class TriggerElem implements Comparable<TriggerElem>
 	{
 		// how often trigger the node
 		protected int updateTimeMillis;
 
-		// timestamp for next trigger
+		// next trigger time, on the System.nanoTime() clock
 		protected long triggerTime;
 
 		// nodeInfo representing the node to trigger
 		protected ZWaveNodeInfo nodeInfo;
 
+		// true if the trigger has been removed
+		private boolean cancelled = false;
+
 		public TriggerElem(ZWaveNodeInfo nodeInfo, long triggerTime,
 				int updateTimeMillis)
 		{
@@ -264,6 +588,30 @@ public class ZWavePoller extends Thread
 			this.nodeInfo = nodeInfo;
 		}
 
+		/**
+		 * Cancels the trigger, must be called holding the queue lock
+		 */
+		void cancel()
+		{
+			this.cancelled = true;
+		}
+
+		/**
+		 * @return true if the trigger has been removed
+		 */
+		public boolean isCancelled()
+		{
+			return this.cancelled;
+		}
+
+		@Override
+		public int compareTo(TriggerElem other)
+		{
+			// compare as a difference, as nanoTime values may overflow
+			long diff = this.triggerTime - other.triggerTime;
+			return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+		}
+
 		/**
 		 * @return the updateTimeMillis
 		 */
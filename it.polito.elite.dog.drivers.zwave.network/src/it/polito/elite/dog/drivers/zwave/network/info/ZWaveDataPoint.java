@@ -0,0 +1,198 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.network.info;
+
+import it.polito.elite.dog.drivers.zwave.model.zway.json.CommandClasses;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.DataElemObject;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.Instance;
+
+/**
+ * Identifies a single value in the Z-Way data tree, i.e., the data element
+ * reached by the given (dot separated) data path under
+ * devices.nodeId.instances.instanceId.commandClasses.commandClass.data, e.g.,
+ * "level" or "2.val".
+ *
+ * @author bonino
+ *
+ */
+public class ZWaveDataPoint
+{
+	// the device node id
+	private final int nodeId;
+
+	// the instance id
+	private final int instanceId;
+
+	// the command class
+	private final int commandClass;
+
+	// the data path, relative to the command class data
+	private final String dataPath;
+
+	// the data path, split in its elements
+	private final String[] pathElements;
+
+	/**
+	 * Creates a new data point
+	 *
+	 * @param nodeId
+	 *            the device node id
+	 * @param instanceId
+	 *            the instance id
+	 * @param commandClass
+	 *            the command class
+	 * @param dataPath
+	 *            the data path, relative to the command class data
+	 */
+	public ZWaveDataPoint(int nodeId, int instanceId, int commandClass, String dataPath)
+	{
+		this.nodeId = nodeId;
+		this.instanceId = instanceId;
+		this.commandClass = commandClass;
+		this.dataPath = dataPath;
+		this.pathElements = dataPath.split("\\.");
+	}
+
+	/**
+	 * @return the device node id
+	 */
+	public int getNodeId()
+	{
+		return nodeId;
+	}
+
+	/**
+	 * @return the instance id
+	 */
+	public int getInstanceId()
+	{
+		return instanceId;
+	}
+
+	/**
+	 * @return the command class
+	 */
+	public int getCommandClass()
+	{
+		return commandClass;
+	}
+
+	/**
+	 * @return the data path, relative to the command class data
+	 */
+	public String getDataPath()
+	{
+		return dataPath;
+	}
+
+	/**
+	 * Gets the data element identified by this data point in the given
+	 * instance node
+	 *
+	 * @param instanceNode
+	 *            the instance node of the device
+	 * @return the data element or null if not available
+	 */
+	public DataElemObject resolve(Instance instanceNode)
+	{
+		CommandClasses ccEntry = instanceNode.getCommandClass(this.commandClass);
+
+		if ((ccEntry == null) || (ccEntry.getCommandClassesData() == null))
+			return null;
+
+		DataElemObject elem = ccEntry.getCommandClassesData().getDataElem(this.pathElements[0]);
+
+		for (int i = 1; (elem != null) && (i < this.pathElements.length); i++)
+			elem = elem.getDataElem(this.pathElements[i]);
+
+		return elem;
+	}
+
+	/**
+	 * Converts the value of a data element to a primitive double: numbers are
+	 * taken as they are, booleans are mapped to 1 (true) and 0 (false)
+	 *
+	 * @param value
+	 *            the data element value
+	 * @return the value as double, or {@link Double#NaN} if the value is not
+	 *         numeric
+	 */
+	public static double toDouble(Object value)
+	{
+		if (value instanceof Number)
+			return ((Number) value).doubleValue();
+		else if (value instanceof Boolean)
+			return ((Boolean) value).booleanValue() ? 1 : 0;
+		else if (value instanceof String)
+		{
+			try
+			{
+				return Double.parseDouble((String) value);
+			}
+			catch (NumberFormatException e)
+			{
+				// not a number
+			}
+		}
+
+		return Double.NaN;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode()
+	{
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + nodeId;
+		result = prime * result + instanceId;
+		result = prime * result + commandClass;
+		result = prime * result + dataPath.hashCode();
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if ((obj == null) || (getClass() != obj.getClass()))
+			return false;
+
+		ZWaveDataPoint other = (ZWaveDataPoint) obj;
+
+		return (nodeId == other.nodeId) && (instanceId == other.instanceId) && (commandClass == other.commandClass)
+				&& dataPath.equals(other.dataPath);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "devices." + nodeId + ".instances." + instanceId + ".commandClasses." + commandClass + ".data."
+				+ dataPath;
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.network.interfaces;
+
+import it.polito.elite.dog.drivers.zwave.network.info.ZWaveDataPoint;
+
+/**
+ * Listener for changes of the {@link ZWaveDataPoint}s subscribed through
+ * {@link ZWaveNetworkHandler#subscribe(ZWaveDataPoint, ZWaveDataPointListener)}
+ * .
+ *
+ * @author bonino
+ *
+ */
+public interface ZWaveDataPointListener
+{
+	/**
+	 * Called, before the driver is notified through newMessageFromHouse, when
+	 * the subscribed data point gets a different value or a newer update time.
+	 * Boolean values are reported as 1 (true) and 0 (false).
+	 *
+	 * @param dataPoint
+	 *            the changed data point
+	 * @param oldValue
+	 *            the previous value, {@link Double#NaN} at the first
+	 *            observation
+	 * @param newValue
+	 *            the current value
+	 * @param updateTime
+	 *            the Z-Way update time of the current value
+	 */
+	public void dataPointChanged(ZWaveDataPoint dataPoint, double oldValue, double newValue, long updateTime);
+}
@@ -4,9 +4,11 @@
 package it.polito.elite.dog.drivers.zwave.network.interfaces;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import it.polito.elite.dog.drivers.zwave.model.zway.json.Device;
 import it.polito.elite.dog.drivers.zwave.network.ZWaveDriverInstance;
+import it.polito.elite.dog.drivers.zwave.network.info.ZWaveDataPoint;
 import it.polito.elite.dog.drivers.zwave.network.info.ZWaveNodeInfo;
 
 /**
@@ -27,6 +29,17 @@ public interface ZWaveNetworkHandler
 	 */
 	public void read(ZWaveNodeInfo nodeInfo, boolean bRequery);
 
+	/**
+	 * Asynchronously delivers the current data of the given nodeInfo to its
+	 * driver, to be called when the driver is attached. The Z-Way server is
+	 * queried only if no data is available yet, and a single query is shared
+	 * by all the reads scheduled in the meantime.
+	 * 
+	 * @param nodeInfo
+	 *            the {@link ZWaveNodeInfo} to read.
+	 */
+	public void scheduleInitialRead(ZWaveNodeInfo nodeInfo);
+
 	/**
 	 * Read the current value of all devices. Values can be different from the
 	 * real status of the devices, since some devices doesn't update Z-Way
@@ -57,7 +70,8 @@ public interface ZWaveNetworkHandler
 	public void updateSensor(ZWaveNodeInfo nodeInfo);
 
 	/**
-	 * Writes a given command to a given ZWave nodeInfo
+	 * Writes a given command to a given ZWave nodeInfo, without waiting for
+	 * the gateway answer: failures are only logged.
 	 * 
 	 * @param deviceId
 	 *            the unique identifier of the device.
@@ -72,6 +86,26 @@ public interface ZWaveNetworkHandler
 	public void write(int deviceId, int instanceId, int nCommandClass,
 			String commandValue);
 
+	/**
+	 * Writes a given command to a given ZWave nodeInfo, without waiting for
+	 * the gateway answer. Commands are paced by the user command rate limiter
+	 * and at most a few of them are in flight at the same time.
+	 * 
+	 * @param deviceId
+	 *            the unique identifier of the device.
+	 * @param instanceId
+	 *            the unique identifier of the instance.
+	 * @param nCommandClass
+	 *            command class. See
+	 *            it.polito.elite.dog.drivers.zwave.ZWaveConst
+	 * @param commandValue
+	 *            the command value to send.
+	 * @return the future gateway answer, completed exceptionally if the
+	 *         command fails
+	 */
+	public CompletableFuture<String> writeAsync(int deviceId, int instanceId,
+			int nCommandClass, String commandValue);
+
 	/**
 	 * Sends a given command to the controller node
 	 * 
@@ -80,6 +114,18 @@ public interface ZWaveNetworkHandler
 	 */
 	public void controllerWrite(String sCommand, String commandValue);
 
+	/**
+	 * Sends a given command to the controller node, without waiting for the
+	 * gateway answer
+	 * 
+	 * @param sCommand
+	 * @param commandValue
+	 * @return the future gateway answer, completed exceptionally if the
+	 *         command fails
+	 */
+	public CompletableFuture<String> controllerWriteAsync(String sCommand,
+			String commandValue);
+
 	/**
 	 * Adds a new device-specific driver for the node id
 	 * 
@@ -95,7 +141,8 @@ public interface ZWaveNetworkHandler
 			ZWaveDriverInstance driver);
 
 	/**
-	 * Removes a device-specific driver for the given register
+	 * Removes a device-specific driver for the given register, unless the
+	 * node has been registered again, with another node info, meanwhile
 	 * 
 	 * @param nodeInfo
 	 *            the unique identifier.
@@ -117,6 +164,33 @@ public interface ZWaveNetworkHandler
 	 */
 	void removeDriver(ZWaveDriverInstance driver);
 
+	/**
+	 * Subscribes the given listener to changes of the given data point. Changes
+	 * are checked only for the device instances that changed since the last
+	 * dispatch, and are notified before calling the newMessageFromHouse method
+	 * of the driver handling the device.
+	 * 
+	 * @param dataPoint
+	 *            the {@link ZWaveDataPoint} to watch.
+	 * @param listener
+	 *            the {@link ZWaveDataPointListener} to notify.
+	 */
+	public void subscribe(ZWaveDataPoint dataPoint,
+			ZWaveDataPointListener listener);
+
+	/**
+	 * Removes a subscription previously made through
+	 * {@link #subscribe(ZWaveDataPoint, ZWaveDataPointListener)}. All the
+	 * subscriptions for a node are also removed when its driver is removed.
+	 * 
+	 * @param dataPoint
+	 *            the watched {@link ZWaveDataPoint}.
+	 * @param listener
+	 *            the {@link ZWaveDataPointListener} to remove.
+	 */
+	public void unsubscribe(ZWaveDataPoint dataPoint,
+			ZWaveDataPointListener listener);
+
 	/**
 	 * Get all raw device data for devices currently available on the network,
 	 * including those that still have to be configured in Dog
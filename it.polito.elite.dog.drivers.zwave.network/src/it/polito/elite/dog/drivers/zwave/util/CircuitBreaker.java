@@ -0,0 +1,201 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.util;
+
+/**
+ * A circuit breaker for the connection to a server: after a given number of
+ * consecutive failures the circuit opens and requests fail fast, without
+ * reaching the server. Once the backoff time is elapsed, a single probe
+ * request is let through (half open): if it succeeds the circuit closes,
+ * otherwise it opens again, doubling the backoff time up to a maximum.
+ */
+public class CircuitBreaker
+{
+	/**
+	 * The circuit states
+	 */
+	public enum State
+	{
+		// requests are let through
+		CLOSED,
+		// requests fail fast
+		OPEN,
+		// a probe request is in progress, the others fail fast
+		HALF_OPEN
+	}
+
+	// the number of consecutive failures opening the circuit
+	private final int failureThreshold;
+
+	// the first and the maximum backoff time, in milliseconds
+	private final long baseBackoffMillis;
+	private final long maxBackoffMillis;
+
+	// the current state
+	private State state = State.CLOSED;
+
+	// the consecutive failures
+	private int failures = 0;
+
+	// the current backoff time, in milliseconds
+	private long backoffMillis = 0;
+
+	// the time of the next probe, in milliseconds
+	private long nextProbeTime = 0;
+
+	/**
+	 * Creates a new circuit breaker, initially closed
+	 *
+	 * @param failureThreshold
+	 *            the number of consecutive failures opening the circuit, at
+	 *            least 1
+	 * @param baseBackoffMillis
+	 *            the time to wait before the first probe
+	 * @param maxBackoffMillis
+	 *            the maximum time to wait between two probes
+	 */
+	public CircuitBreaker(int failureThreshold, long baseBackoffMillis, long maxBackoffMillis)
+	{
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.baseBackoffMillis = Math.max(0, baseBackoffMillis);
+		this.maxBackoffMillis = Math.max(this.baseBackoffMillis, maxBackoffMillis);
+	}
+
+	/**
+	 * Checks if a request can be sent, turning the circuit half open when a
+	 * probe is due
+	 *
+	 * @return true if the request can be sent, false if it shall fail fast
+	 */
+	public synchronized boolean allowRequest()
+	{
+		switch (this.state)
+		{
+			case CLOSED:
+			{
+				return true;
+			}
+			case OPEN:
+			{
+				if (System.currentTimeMillis() < this.nextProbeTime)
+					return false;
+
+				// let the probe through
+				this.state = State.HALF_OPEN;
+				return true;
+			}
+			default:
+			{
+				// a probe is already in progress
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Records a successful request, closing the circuit
+	 *
+	 * @return true if the circuit has just been closed
+	 */
+	public synchronized boolean recordSuccess()
+	{
+		boolean closed = (this.state != State.CLOSED);
+
+		this.state = State.CLOSED;
+		this.failures = 0;
+		this.backoffMillis = 0;
+
+		return closed;
+	}
+
+	/**
+	 * Records a failed request, opening the circuit after too many
+	 * consecutive failures, or after a failed probe
+	 *
+	 * @return true if the circuit has just been opened, i.e., it was closed
+	 *         or half open
+	 */
+	public synchronized boolean recordFailure()
+	{
+		this.failures++;
+
+		switch (this.state)
+		{
+			case CLOSED:
+			{
+				if (this.failures < this.failureThreshold)
+					return false;
+
+				this.backoffMillis = this.baseBackoffMillis;
+				break;
+			}
+			case HALF_OPEN:
+			{
+				this.backoffMillis = Math.min(this.backoffMillis * 2, this.maxBackoffMillis);
+				break;
+			}
+			default:
+			{
+				// already open, e.g., a request sent before the opening
+				return false;
+			}
+		}
+
+		this.state = State.OPEN;
+		this.nextProbeTime = System.currentTimeMillis() + this.backoffMillis;
+		return true;
+	}
+
+	/**
+	 * Records a request abandoned without an answer from the server (e.g.,
+	 * interrupted), which is neither a success nor a failure: if it was the
+	 * probe, the next request becomes the probe
+	 */
+	public synchronized void recordAbandoned()
+	{
+		if (this.state == State.HALF_OPEN)
+		{
+			this.state = State.OPEN;
+			this.nextProbeTime = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * @return true if requests are let through
+	 */
+	public synchronized boolean isClosed()
+	{
+		return this.state == State.CLOSED;
+	}
+
+	/**
+	 * @return the current state
+	 */
+	public synchronized State getState()
+	{
+		return this.state;
+	}
+
+	/**
+	 * @return the current backoff time, in milliseconds
+	 */
+	public synchronized long getBackoffMillis()
+	{
+		return this.backoffMillis;
+	}
+}
@@ -18,8 +18,10 @@
 package it.polito.elite.dog.drivers.zwave.util;
 
 import java.io.IOException;
-import java.net.Authenticator;
-import java.net.PasswordAuthentication;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
@@ -29,14 +31,38 @@ import java.net.http.HttpResponse.BodyHandlers;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import javax.ws.rs.core.Response.Status;
 
 import org.osgi.service.log.Logger;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import it.polito.elite.dog.drivers.zwave.model.zway.json.ZWaveJsonModule;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.ZWaveModelProjection;
 import it.polito.elite.dog.drivers.zwave.model.zway.json.ZWaveModelTree;
 
 public class ConnectionManager
@@ -48,58 +74,248 @@ public class ConnectionManager
 	public static final String RUN_PATH = "/ZWaveAPI/Run/";
 	private static final Duration API_REQUEST_TIMEOUT = Duration.of(30, ChronoUnit.SECONDS);
 
+	// the maximum number of commands concurrently sent to the server, the
+	// others wait in a queue; one slot is reserved to priority commands
+	public static final int MAX_IN_FLIGHT_COMMANDS = 4;
+
+	// commands issued within this window are sent in a single request
+	public static final long BATCH_WINDOW_MILLIS = 5;
+
+	// the maximum number of commands in a single request
+	public static final int MAX_BATCH_COMMANDS = 16;
+
+	// the maximum length of the script sent in a single request, in
+	// characters, to keep the request URL within the server limits
+	public static final int MAX_BATCH_LENGTH = 1024;
+
+	// the default number of consecutive failures after which the server is
+	// considered unreachable
+	public static final int DEFAULT_NUM_TRY = 3;
+
+	// the default time between two connection trials to an unreachable
+	// server, doubled after each failed trial
+	public static final long DEFAULT_BETWEEN_TRIAL_TIME_MILLIS = 30000;
+
+	// the maximum time between two trials, as a multiple of the configured one
+	private static final int MAX_BACKOFF_FACTOR = 8;
+
 	protected URI baseURL;
 
-	protected HttpClient hClient;
-	private String sLastError;
+	// the lane of the data fetches, i.e., the model tree downloads
+	protected HttpLane dataLane;
+
+	// the lane of the Run commands
+	protected HttpLane commandLane;
 
-	// Tree representing system status
-	ZWaveModelTree zWaveModelTree = null;
+	private String sLastError;
 
-	// Json tree representig the system status, used for partial update
-	private JsonNode zWaveTree;
+	// Tree representing system status, never modified once published: each
+	// update publishes a new tree, with the next generation number, sharing
+	// the unchanged elements with the previous one
+	private volatile ZWaveModelTree zWaveModelTree = null;
 
-	// Convert JSON to Java object
-	ObjectMapper mapper = new ObjectMapper();
+	// Convert JSON to Java object, replaced when the model projection is set
+	volatile ObjectMapper mapper = ZWaveJsonModule.createMapper();
 
 	// last update
-	long lastUpdate = 0;
+	private volatile long lastUpdate = 0;
+
+	// the refresh in progress, if any, shared by all the concurrent callers of
+	// updateDevices()
+	private CompletableFuture<ZWaveModelTree> inFlight = null;
+	private final Object refreshLock = new Object();
+
+	// the changes applied to the tree and not yet taken by the network handler
+	private ZWaveModelChanges pendingChanges = new ZWaveModelChanges();
+
+	// true if the next update shall download the whole network tree instead
+	// of the changes occurred since the last update, e.g., after errors
+	private boolean resyncNeeded = true;
+
+	// the batches waiting for an in-flight slot, priority ones (user
+	// commands) first, and the number of batches in flight, all guarded by
+	// the command queue
+	private Queue<List<PendingCommand>> priorityQueue = new ArrayDeque<List<PendingCommand>>();
+	private Queue<List<PendingCommand>> commandQueue = new ArrayDeque<List<PendingCommand>>();
+	private int inFlightCommands = 0;
+
+	// the number of in-flight commands per addressed node, guarded by the
+	// command queue: a batch is never sent while an earlier one addressing
+	// the same node is in flight, so that each node gets its commands in order
+	private Map<Integer, Integer> inFlightNodes = new HashMap<Integer, Integer>();
+
+	// the commands collected in the current batching window, priority
+	// commands are never batched with the others
+	private BatchCollector priorityBatch = new BatchCollector(true);
+	private BatchCollector commandBatch = new BatchCollector(false);
+
+	// the number of commands and of requests sent so far
+	private AtomicLong sentCommands = new AtomicLong();
+	private AtomicLong sentRequests = new AtomicLong();
+
+	// the data bytes received so far, as sent on the wire (possibly
+	// compressed) and once decoded
+	private AtomicLong receivedWireBytes = new AtomicLong();
+	private AtomicLong receivedDecodedBytes = new AtomicLong();
+
+	// the Basic authorization header sent with every request, null if no
+	// credentials are configured
+	private String authorization = null;
+
+	// the number of requests sent with the authorization header, and the
+	// number of challenges (401 answers) received anyway
+	private AtomicLong preemptiveRequests = new AtomicLong();
+	private AtomicLong authChallenges = new AtomicLong();
+
+	// the circuit breaker, failing fast while the server is unreachable
+	private CircuitBreaker breaker;
 
 	// the logger
 	private Logger logger;
 
 	public ConnectionManager(String sURL, String sUser, String sPassword, Logger logger)
+	{
+		this(sURL, sUser, sPassword, ConnectionManager.DEFAULT_NUM_TRY,
+				ConnectionManager.DEFAULT_BETWEEN_TRIAL_TIME_MILLIS, logger);
+	}
+
+	/**
+	 * 
+	 * @param numTry
+	 *            the number of consecutive failed requests after which the
+	 *            server is considered unreachable
+	 * @param betweenTrialTimeMillis
+	 *            the time between the first two connection trials to an
+	 *            unreachable server, doubled after each failed trial
+	 */
+	public ConnectionManager(String sURL, String sUser, String sPassword, int numTry, long betweenTrialTimeMillis,
+			Logger logger)
 	{
 		// handle possible ending slash on the URL
 		this.baseURL = URI.create(sURL);
 		this.logger = logger;
+		this.breaker = new CircuitBreaker(numTry, betweenTrialTimeMillis,
+				betweenTrialTimeMillis * MAX_BACKOFF_FACTOR);
 
-		// if credentials are specified, create an authenticated client,
-		// otherwise a simple one.
+		// the Z-Way session cookie (ZWAYSession) is kept and sent back with
+		// the following requests
+		HttpClient.Builder builder = HttpClient.newBuilder()
+				.cookieHandler(new CookieManager(null, CookiePolicy.ACCEPT_ALL));
+
+		// if credentials are specified, authenticate every request
+		// pre-emptively, instead of waiting for a challenge
 		if ((sUser != null) && (!sUser.isEmpty()) && (sPassword != null) && (!sPassword.isEmpty()))
 		{
-			// create authenticated client
-			this.hClient = HttpClient.newBuilder().authenticator(new Authenticator()
-			{
-				@Override
-				protected PasswordAuthentication getPasswordAuthentication()
-				{
-					return new PasswordAuthentication(sUser, sPassword.toCharArray());
-				}
-			}).connectTimeout(Duration.of(10, ChronoUnit.SECONDS)).build();
+			this.authorization = "Basic "
+					+ Base64.getEncoder().encodeToString((sUser + ":" + sPassword).getBytes(StandardCharsets.UTF_8));
+			builder.connectTimeout(Duration.of(10, ChronoUnit.SECONDS));
+		}
+
+		// separate lanes, the commands never wait for a data download
+		this.dataLane = new HttpLane("data", builder);
+		this.commandLane = new HttpLane("command", builder);
+	}
+
+	/**
+	 * Records a request which reached the server, closing the circuit if
+	 * open
+	 */
+	private void connectionSucceeded()
+	{
+		if (this.breaker.recordSuccess())
+			this.logger.info(LOG_ID + "Z-Way server " + this.baseURL + " reachable again, resynchronizing");
+	}
+
+	/**
+	 * Records a request which could not reach the server, opening the circuit
+	 * after too many failures
+	 */
+	private void connectionFailed()
+	{
+		// changes might be lost, re-sync once the server is reachable
+		this.resyncNeeded = true;
+
+		if (this.breaker.recordFailure())
+			this.logger.warn(LOG_ID + "Z-Way server " + this.baseURL + " unreachable, next trial in "
+					+ this.breaker.getBackoffMillis() + " ms");
+	}
+
+	/**
+	 * @return true if the server is considered reachable, false if requests
+	 *         currently fail fast
+	 */
+	public boolean isAvailable()
+	{
+		return this.breaker.isClosed();
+	}
+
+	/**
+	 * @return the circuit breaker of this connection
+	 */
+	public CircuitBreaker getCircuitBreaker()
+	{
+		return this.breaker;
+	}
+
+	/**
+	 * Creates a request builder for the given URI, carrying the authorization
+	 * header if credentials are configured
+	 * 
+	 * @param uri
+	 * @return the request builder
+	 */
+	private HttpRequest.Builder newRequest(URI uri)
+	{
+		HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(API_REQUEST_TIMEOUT);
 
+		if (this.authorization != null)
+		{
+			request.header("Authorization", this.authorization);
+			this.preemptiveRequests.incrementAndGet();
 		}
-		else
+
+		return request;
+	}
+
+	/**
+	 * Counts the authentication challenges, i.e., the requests rejected
+	 * despite the authorization header
+	 * 
+	 * @param response
+	 */
+	private void checkChallenge(HttpResponse<?> response)
+	{
+		if (response.statusCode() == Status.UNAUTHORIZED.getStatusCode())
 		{
-			// create simple client
-			this.hClient = HttpClient.newHttpClient();
+			this.authChallenges.incrementAndGet();
+			this.logger.warn(LOG_ID + "Request rejected by the Z-Way server, check the configured credentials");
 		}
 	}
 
+	/**
+	 * @return the number of requests sent with the authorization header,
+	 *         i.e., authenticated pre-emptively
+	 */
+	public long getPreemptiveRequests()
+	{
+		return this.preemptiveRequests.get();
+	}
+
+	/**
+	 * @return the number of authentication challenges received
+	 */
+	public long getAuthChallenges()
+	{
+		return this.authChallenges.get();
+	}
+
 	/**
 	 * Query zway-server for an update of the system status since the lSince
-	 * param. Implementation of partial update is 2-3 times faster than a full
-	 * update.
+	 * param. If a consistent tree is locally available, only the changes
+	 * occurred after lSince are requested (/ZWaveAPI/Data/{lSince}) and merged
+	 * into the local tree, otherwise the full network tree is downloaded.
+	 * After errors, or whenever the received changes cannot be merged, a full
+	 * re-synchronization is performed.
 	 * 
 	 * @param lSince
 	 *            Unix-timestamp representing the last update, 0 for a full
@@ -108,73 +324,347 @@ public class ConnectionManager
 	 * @throws Exception
 	 * 
 	 */
-	public ZWaveModelTree updateDevices(long lSince) throws Exception
+	public synchronized ZWaveModelTree updateDevices(long lSince) throws Exception
 	{
-		HttpRequest request = HttpRequest.newBuilder(this.baseURL.resolve(DATA_PATH)).timeout(API_REQUEST_TIMEOUT)
-				.header("Content-type", "application/json").GET().build();
+		// fail fast while the server is unreachable, unless a trial is due
+		if (!this.breaker.allowRequest())
+			throw new ZWaveGatewayUnavailableException("Z-Way server " + this.baseURL + " unreachable");
+
+		// incremental updates can only be merged in a consistent tree
+		boolean fullUpdate = (this.zWaveModelTree == null) || (lSince <= 0) || this.resyncNeeded;
+
+		String path = fullUpdate ? DATA_PATH : DATA_PATH + lSince;
 
-		HttpResponse<String> response = null;
+		// the data are highly repetitive, ask for them compressed
+		HttpRequest request = this.newRequest(this.baseURL.resolve(path))
+				.header("Content-type", "application/json").header("Accept-Encoding", "gzip, deflate").GET()
+				.build();
+
+		HttpResponse<InputStream> response = null;
 		try
 		{
-			response = this.hClient.send(request, BodyHandlers.ofString());
+			response = this.dataLane.send(request, BodyHandlers.ofInputStream());
+		}
+		catch (InterruptedException e)
+		{
+			// not a server fault, do not count it as a failure
+			this.breaker.recordAbandoned();
+			Thread.currentThread().interrupt();
+			throw e;
 		}
-		catch (IOException | InterruptedException e)
+		catch (IOException e)
 		{
+			// changes might be lost, re-sync at the next update
+			this.connectionFailed();
 			this.logger.warn(String.format("Unable to update device: %s", e));
 			throw e;
 		}
 
-		// if it comes here, response is not null, check the response status
-		if (response.statusCode() == Status.OK.getStatusCode())
+		// server errors are handled as connection failures, while the outcome
+		// of a data answer is known once it has been read
+		if (response.statusCode() >= Status.INTERNAL_SERVER_ERROR.getStatusCode())
+			this.connectionFailed();
+		else if (response.statusCode() != Status.OK.getStatusCode())
+			this.connectionSucceeded();
+
+		// if it comes here, response is not null, count the received bytes
+		// and decode them while they are parsed
+		CountingInputStream wire = new CountingInputStream(response.body());
+		CountingInputStream decoded = null;
+		try
 		{
+			decoded = new CountingInputStream(
+					decode(wire, response.headers().firstValue("Content-Encoding").orElse(null)));
+		}
+		catch (IOException e)
+		{
+			wire.close();
+			this.resyncNeeded = true;
+			this.breaker.recordAbandoned();
+			throw e;
+		}
 
-			String json = response.body();// response.readEntity(String.class);
+		// true if the changes cannot be merged, and the whole tree shall be
+		// downloaded once the changes have been closed
+		boolean resync = false;
 
-			// Convert JSON to Java object
-			try
+		// check the response status
+		try (InputStream body = decoded)
+		{
+			if (response.statusCode() == Status.OK.getStatusCode())
 			{
-				// in this case we process the whole data
-				if (zWaveModelTree == null || lSince == 0)
+				// Convert JSON to Java object, the body is parsed once, while
+				// it is received, without buffering it as a String
+				try (JsonParser parser = mapper.getFactory().createParser(body))
+				{
+					// in this case we process the whole data
+					if (fullUpdate)
+					{
+						// use http://jsoneditoronline.org/ for a friendly UI
+						ZWaveModelTree tree = mapper.readValue(parser, ZWaveModelTree.class);
+
+						// the server answered with an empty body
+						if (tree == null)
+							throw new JsonParseException(parser, "Empty response from Z-Way server");
+
+						ZWaveModelTree previous = zWaveModelTree;
+						tree.setGeneration((previous != null) ? previous.getGeneration() + 1 : 1);
+						zWaveModelTree = tree;
+						this.pendingChanges.setFull();
+						this.resyncNeeded = false;
+					}
+					else
+					// otherwise we proceed to update the tree
+					{
+						// the changes are small, keep them as a json tree
+						JsonNode changes = mapper.readTree(parser);
+
+						// the server answered with an empty body
+						if (changes == null)
+							throw new JsonParseException(parser, "Empty response from Z-Way server");
+
+						ZWaveModelChanges changed = new ZWaveModelChanges();
+						ZWaveModelTree updatedTree = JsonUpdate.updateModel(mapper, zWaveModelTree, changes, changed);// devices.26.instances.0.commandClasses.49.data.1.val
+
+						// the changes cannot be merged (e.g., they refer to
+						// unknown nodes) or the server time went back: the
+						// local tree is no more consistent, re-sync
+						if ((updatedTree == null) || (updatedTree.getUpdateTime() < lSince))
+						{
+							this.logger.info(LOG_ID + "Incremental update not applicable, performing a full update");
+							this.resyncNeeded = true;
+							resync = true;
+						}
+						else
+						{
+							zWaveModelTree = updatedTree;
+							this.pendingChanges.merge(changed);
+						}
+					}
+				}
+				catch (JsonProcessingException e)
 				{
-					// System.out.println(json);//use
-					// http://jsoneditoronline.org/ for a friendly UI
-					zWaveModelTree = mapper.readValue(json, ZWaveModelTree.class);
-					zWaveTree = mapper.readTree(json);
+					// the server answered, with data which cannot be read: not a
+					// connection failure, re-sync at the next update
+					this.resyncNeeded = true;
+					this.breaker.recordAbandoned();
+					this.logger.warn(LOG_ID + "Unable to read the Z-Way data: " + e);
+					throw e;
 				}
-				else
-				// otherwise we proceed to update the tree
+				catch (IOException e)
 				{
-					zWaveModelTree = JsonUpdate.updateModel(mapper, zWaveTree, json);// devices.26.instances.0.commandClasses.49.data.1.val
+					// e.g., the connection dropped while reading
+					this.connectionFailed();
+					this.logger.warn(LOG_ID + "Unable to read the Z-Way data: " + e);
+					throw e;
 				}
+
+				// the answer has been completely received
+				this.connectionSucceeded();
 			}
-			catch (IOException e)
+			else
 			{
-				e.printStackTrace();
-				throw e;
+				this.checkChallenge(response);
+				String error = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+				this.resyncNeeded = true;
+				this.logger.error(String.format("unable to read from Z-Way server: %s", error));
+				throw new Exception("Can't read json from Z-Way server: " + error);
 			}
 		}
-		else
+		finally
 		{
-			this.logger.error(String.format("unable to read from Z-Way server: %s", response.body()));
-			throw new Exception("Can't read json from Z-Way server: " + response.body());
+			this.receivedWireBytes.addAndGet(wire.getCount());
+			this.receivedDecodedBytes.addAndGet(decoded.getCount());
 		}
 
+		// the changes are closed, download the whole tree
+		if (resync)
+			return this.updateDevices(0);
+
 		return zWaveModelTree;
 	}
 
+	/**
+	 * Wraps the given response body with a decoder of the given content
+	 * encoding, decoding the data while they are read
+	 * 
+	 * @param body
+	 *            the response body
+	 * @param encoding
+	 *            the content encoding, null for none
+	 * @return the decoded response body
+	 * @throws IOException
+	 */
+	private static InputStream decode(InputStream body, String encoding) throws IOException
+	{
+		if (encoding == null)
+			return body;
+
+		switch (encoding.trim().toLowerCase())
+		{
+			case "gzip":
+			case "x-gzip":
+			{
+				return new GZIPInputStream(body, 8192);
+			}
+			case "deflate":
+			{
+				// deflate data may be either zlib wrapped, as required by the
+				// specification, or raw: check the zlib header
+				PushbackInputStream in = new PushbackInputStream(body, 2);
+				int b0 = in.read();
+				int b1 = in.read();
+				if (b1 >= 0)
+					in.unread(b1);
+				if (b0 >= 0)
+					in.unread(b0);
+				boolean zlib = (b0 >= 0) && (b1 >= 0) && ((b0 & 0x0F) == 8) && (((b0 << 8) | b1) % 31 == 0);
+
+				final Inflater inflater = new Inflater(!zlib);
+				return new InflaterInputStream(in, inflater, 8192)
+				{
+					@Override
+					public void close() throws IOException
+					{
+						try
+						{
+							super.close();
+						}
+						finally
+						{
+							inflater.end();
+						}
+					}
+				};
+			}
+			default:
+			{
+				// identity
+				return body;
+			}
+		}
+	}
+
+	/**
+	 * @return the data bytes received so far, as sent on the wire, i.e.,
+	 *         possibly compressed
+	 */
+	public long getReceivedWireBytes()
+	{
+		return this.receivedWireBytes.get();
+	}
+
+	/**
+	 * @return the data bytes received so far, once decoded
+	 */
+	public long getReceivedDecodedBytes()
+	{
+		return this.receivedDecodedBytes.get();
+	}
+
 	/**
 	 * Query zway-server for an update of the system status. It's equivalent to
-	 * updateDevices(ZWaveModelTree.getLastUpdate())
+	 * updateDevices(ZWaveModelTree.getLastUpdate()), but concurrent calls are
+	 * collapsed: callers arriving while a refresh is in progress do not issue
+	 * a new request, they wait for the running one and get its result.
 	 * 
 	 * @return ZWaveModelTree representing the full system
 	 * @throws Exception
 	 */
 	public ZWaveModelTree updateDevices() throws Exception
 	{
-		updateDevices(lastUpdate);
-		// Update time of the last update
-		lastUpdate = zWaveModelTree.getUpdateTime();
-		return zWaveModelTree;
+		CompletableFuture<ZWaveModelTree> refresh = null;
+		boolean owner = false;
+
+		// join the refresh in progress or start a new one
+		synchronized (this.refreshLock)
+		{
+			refresh = this.inFlight;
+			if (refresh == null)
+			{
+				refresh = new CompletableFuture<ZWaveModelTree>();
+				this.inFlight = refresh;
+				owner = true;
+			}
+		}
+
+		if (owner)
+		{
+			try
+			{
+				ZWaveModelTree tree = this.updateDevices(this.lastUpdate);
+				// Update time of the last update
+				this.lastUpdate = tree.getUpdateTime();
+				refresh.complete(tree);
+				return tree;
+			}
+			catch (Exception e)
+			{
+				refresh.completeExceptionally(e);
+				throw e;
+			}
+			finally
+			{
+				synchronized (this.refreshLock)
+				{
+					this.inFlight = null;
+				}
+			}
+		}
+
+		try
+		{
+			return refresh.get();
+		}
+		catch (ExecutionException e)
+		{
+			// report the error of the shared refresh as if it were our own
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the last published system status, without querying the
+	 * zway-server. The returned tree is never modified, therefore it can be
+	 * read without locking.
+	 * 
+	 * @return the current ZWaveModelTree, null if not yet available
+	 */
+	public ZWaveModelTree getModelTree()
+	{
+		return this.zWaveModelTree;
+	}
+
+	/**
+	 * Restricts the model trees built from now on to the given projection:
+	 * the devices not in the projection are built only when first read, the
+	 * unused parts of the tree are skipped. The next update downloads the
+	 * full network tree.
+	 * 
+	 * @param projection
+	 *            the {@link ZWaveModelProjection}, null to build the whole
+	 *            tree
+	 */
+	public synchronized void setModelProjection(ZWaveModelProjection projection)
+	{
+		this.mapper = ZWaveJsonModule.createMapper(projection);
+		this.resyncNeeded = true;
+	}
+
+	/**
+	 * Returns the changes applied to the system status by all the updates
+	 * performed since the last call of this method, and resets them. Changes
+	 * fetched by any caller are therefore never lost.
+	 * 
+	 * @return the {@link ZWaveModelChanges} not yet taken
+	 */
+	public synchronized ZWaveModelChanges takeChanges()
+	{
+		ZWaveModelChanges changes = this.pendingChanges;
+		this.pendingChanges = new ZWaveModelChanges();
+		return changes;
 	}
 
 	/**
@@ -201,19 +691,468 @@ public class ConnectionManager
 		return bSuccess;
 	}
 
+	/**
+	 * Sends a command and waits for the server answer
+	 * 
+	 * @param sCommand
+	 *            the command to run
+	 * @return the server answer
+	 * @throws Exception
+	 */
 	public String sendCommand(String sCommand) throws Exception
 	{
-		HttpRequest request = HttpRequest
-				.newBuilder(this.baseURL.resolve( RUN_PATH).resolve( URLEncoder.encode(sCommand, StandardCharsets.UTF_8)))
-				.timeout(API_REQUEST_TIMEOUT).GET().build();
-		HttpResponse<String> response = this.hClient.send(request, BodyHandlers.ofString());
+		try
+		{
+			return this.sendCommandAsync(sCommand).get();
+		}
+		catch (ExecutionException e)
+		{
+			// report the error as if the command was sent by this thread
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sends a priority command (e.g., a user command) without waiting for the
+	 * server answer.
+	 * 
+	 * @param sCommand
+	 *            the command to run
+	 * @return the future server answer, completed exceptionally if the
+	 *         command fails
+	 * @see #sendCommandAsync(String, boolean)
+	 */
+	public CompletableFuture<String> sendCommandAsync(String sCommand)
+	{
+		return this.sendCommandAsync(sCommand, true);
+	}
+
+	/**
+	 * Sends a command without waiting for the server answer. The commands
+	 * issued within {@link #BATCH_WINDOW_MILLIS} are collected in a single
+	 * request, up to {@link #MAX_BATCH_COMMANDS} commands and
+	 * {@link #MAX_BATCH_LENGTH} characters. At most
+	 * {@link #MAX_IN_FLIGHT_COMMANDS} requests are sent concurrently, the
+	 * others are queued and sent, in order, as soon as a running request
+	 * completes. Priority commands are sent before any queued non-priority
+	 * one, and the latter can never take all the in-flight slots. The
+	 * commands addressing the same device are sent in order, one request at
+	 * a time, while those addressing different devices can overlap.
+	 * 
+	 * @param sCommand
+	 *            the command to run
+	 * @param priority
+	 *            true for latency sensitive commands, e.g., user commands,
+	 *            false for background ones, e.g., sensor updates
+	 * @return the future server answer, completed exceptionally if the
+	 *         command fails
+	 */
+	public CompletableFuture<String> sendCommandAsync(String sCommand, boolean priority)
+	{
+		// fail fast while the server is unreachable
+		if (!this.breaker.isClosed())
+			return CompletableFuture
+					.failedFuture(new ZWaveGatewayUnavailableException("Z-Way server " + this.baseURL + " unreachable"));
+
+		PendingCommand command = new PendingCommand(sCommand);
+		BatchCollector collector = priority ? this.priorityBatch : this.commandBatch;
+		boolean queued = false;
+		List<PendingCommand> started = null;
+
+		synchronized (collector)
+		{
+			// the command does not fit in the current batch, send it now;
+			// the batches are queued holding the collector lock, so that
+			// they are queued in the order they were collected
+			if ((!collector.batch.isEmpty())
+					&& (collector.batchLength + command.script.length() > MAX_BATCH_LENGTH))
+			{
+				this.enqueue(collector.takeBatch(), priority);
+				queued = true;
+			}
+
+			collector.batch.add(command);
+			collector.batchLength += command.script.length();
+
+			if ((collector.batch.size() >= MAX_BATCH_COMMANDS) || (collector.batchLength >= MAX_BATCH_LENGTH))
+			{
+				this.enqueue(collector.takeBatch(), priority);
+				queued = true;
+			}
+			else if (collector.batch.size() == 1)
+				started = collector.batch;
+		}
+
+		if (queued)
+			this.sendQueued();
+
+		if (started != null)
+		{
+			// send the batch at the end of the window, unless already sent
+			final BatchCollector startedCollector = collector;
+			final List<PendingCommand> startedBatch = started;
+			CompletableFuture.delayedExecutor(BATCH_WINDOW_MILLIS, TimeUnit.MILLISECONDS).execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					flushBatch(startedCollector, startedBatch);
+				}
+			});
+		}
+
+		return command.result;
+	}
+
+	/**
+	 * Sends the given batch, if still collecting commands
+	 * 
+	 * @param collector
+	 *            the collector of the batch
+	 * @param expected
+	 *            the batch whose window expired
+	 */
+	private void flushBatch(BatchCollector collector, List<PendingCommand> expected)
+	{
+		boolean queued = false;
+
+		synchronized (collector)
+		{
+			// a full batch has already been sent, the current one has its
+			// own window
+			if (collector.batch == expected)
+			{
+				this.enqueue(collector.takeBatch(), collector.priority);
+				queued = true;
+			}
+		}
+
+		if (queued)
+			this.sendQueued();
+	}
+
+	/**
+	 * Queues the given batch, to be sent by {@link #sendQueued()} as soon as
+	 * an in-flight slot is available
+	 * 
+	 * @param commands
+	 * @param priority
+	 *            true if the batch holds priority commands
+	 */
+	private void enqueue(List<PendingCommand> commands, boolean priority)
+	{
+		synchronized (this.commandQueue)
+		{
+			if (priority)
+				this.priorityQueue.add(commands);
+			else
+				this.commandQueue.add(commands);
+		}
+	}
+
+	/**
+	 * Sends all the queued batches which can be sent now
+	 */
+	private void sendQueued()
+	{
+		List<List<PendingCommand>> next = new ArrayList<List<PendingCommand>>();
+
+		synchronized (this.commandQueue)
+		{
+			List<PendingCommand> batch;
+			while ((batch = this.nextBatch()) != null)
+				next.add(batch);
+		}
+
+		for (List<PendingCommand> batch : next)
+			this.startCommands(batch);
+	}
+
+	/**
+	 * Takes the next batch to send, if any, and its in-flight slot: priority
+	 * batches first, while non-priority batches always leave one slot free. A
+	 * batch addressing a node with commands in flight, or in an earlier
+	 * queued batch, waits, and the later batches are sent in the meantime.
+	 * To be called holding the command queue lock.
+	 * 
+	 * @return the batch to send, null if none can be sent now
+	 */
+	private List<PendingCommand> nextBatch()
+	{
+		// the nodes whose next batch cannot be sent yet
+		Set<Integer> busyNodes = new HashSet<Integer>(this.inFlightNodes.keySet());
+
+		if (this.inFlightCommands < MAX_IN_FLIGHT_COMMANDS)
+		{
+			List<PendingCommand> next = this.takeBatch(this.priorityQueue, busyNodes);
+			if (next != null)
+				return next;
+		}
+
+		if (this.inFlightCommands < MAX_IN_FLIGHT_COMMANDS - 1)
+			return this.takeBatch(this.commandQueue, busyNodes);
+
+		return null;
+	}
+
+	/**
+	 * Takes the first batch of the given queue not addressing any of the busy
+	 * nodes, and its in-flight slot. The nodes of the batches skipped are
+	 * added to the busy ones, so that the later batches do not overtake them.
+	 * 
+	 * @param queue
+	 * @param busyNodes
+	 * @return the batch to send, null if none can be sent now
+	 */
+	private List<PendingCommand> takeBatch(Queue<List<PendingCommand>> queue, Set<Integer> busyNodes)
+	{
+		Iterator<List<PendingCommand>> batches = queue.iterator();
+		while (batches.hasNext())
+		{
+			List<PendingCommand> batch = batches.next();
+
+			boolean busy = false;
+			for (PendingCommand command : batch)
+				if ((command.nodeId != null) && (busyNodes.contains(command.nodeId)))
+					busy = true;
+
+			if (busy)
+			{
+				for (PendingCommand command : batch)
+					if (command.nodeId != null)
+						busyNodes.add(command.nodeId);
+			}
+			else
+			{
+				batches.remove();
+				this.inFlightCommands++;
+				for (PendingCommand command : batch)
+					if (command.nodeId != null)
+					{
+						Integer count = this.inFlightNodes.get(command.nodeId);
+						this.inFlightNodes.put(command.nodeId, (count != null) ? count + 1 : 1);
+					}
+				return batch;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Sends the given batch, which already took an in-flight slot. A single
+	 * command is sent as it is, while several commands are wrapped in a
+	 * script which runs each of them, catching its errors, and returns the
+	 * array of their results.
+	 * 
+	 * @param commands
+	 */
+	private void startCommands(final List<PendingCommand> commands)
+	{
+		// the server became unreachable while the batch was waiting
+		if (!this.breaker.isClosed())
+		{
+			this.commandDone(commands);
+			this.failAll(commands, new ZWaveGatewayUnavailableException("Z-Way server " + this.baseURL + " unreachable"));
+			return;
+		}
+
+		try
+		{
+			String script = null;
+			if (commands.size() == 1)
+				script = commands.get(0).command;
+			else
+			{
+				StringBuilder batchScript = new StringBuilder("(function(){var r=[];");
+				for (PendingCommand command : commands)
+					batchScript.append(command.script);
+				script = batchScript.append("return r;})()").toString();
+			}
+
+			HttpRequest request = this
+					.newRequest(this.baseURL.resolve(RUN_PATH)
+							.resolve(URLEncoder.encode(script, StandardCharsets.UTF_8)))
+					.GET().build();
+
+			this.sentRequests.incrementAndGet();
+			this.sentCommands.addAndGet(commands.size());
 
-		if (response.statusCode() != Status.OK.getStatusCode())
+			this.commandLane.sendAsync(request, BodyHandlers.ofString())
+					.whenComplete(new BiConsumer<HttpResponse<String>, Throwable>()
+					{
+						@Override
+						public void accept(HttpResponse<String> response, Throwable error)
+						{
+							// free the slot first, the result handlers may send
+							// further commands
+							commandDone(commands);
+
+							if (error != null)
+							{
+								Throwable cause = ((error instanceof CompletionException) && (error.getCause() != null))
+										? error.getCause()
+										: error;
+								if (cause instanceof IOException)
+									connectionFailed();
+								else
+									breaker.recordAbandoned();
+								failAll(commands, cause);
+							}
+							else if (response.statusCode() >= Status.INTERNAL_SERVER_ERROR.getStatusCode())
+							{
+								connectionFailed();
+								failAll(commands, new Exception(
+										"Can't read json from Z-Way server: " + response.toString()));
+							}
+							else if (response.statusCode() != Status.OK.getStatusCode())
+							{
+								connectionSucceeded();
+								checkChallenge(response);
+								failAll(commands, new Exception(
+										"Can't read json from Z-Way server: " + response.toString()));
+							}
+							else
+							{
+								connectionSucceeded();
+								if (commands.size() == 1)
+									commands.get(0).result.complete(response.body());
+								else
+									completeAll(commands, response.body());
+							}
+						}
+					});
+		}
+		catch (Exception e)
+		{
+			// the request cannot be built or sent
+			this.commandDone(commands);
+			this.failAll(commands, e);
+		}
+	}
+
+	/**
+	 * Completes the commands of a batch with their own results, i.e., the
+	 * elements of the array returned by the batch script: {"r": result} for
+	 * successful commands, {"e": error} for failed ones.
+	 * 
+	 * @param commands
+	 * @param body
+	 *            the server answer
+	 */
+	private void completeAll(List<PendingCommand> commands, String body)
+	{
+		JsonNode results = null;
+		try
+		{
+			results = this.mapper.readTree(body);
+		}
+		catch (Exception e)
+		{
+			this.failAll(commands, e);
+			return;
+		}
+
+		if ((results == null) || (!results.isArray()) || (results.size() != commands.size()))
+		{
+			this.failAll(commands, new Exception("Unexpected answer from Z-Way server: " + body));
+			return;
+		}
+
+		for (int i = 0; i < commands.size(); i++)
+		{
+			JsonNode result = results.get(i);
+			PendingCommand command = commands.get(i);
+
+			if (result.has("e"))
+				command.result.completeExceptionally(
+						new Exception("Z-Way command " + command.command + " failed: " + result.get("e").asText()));
+			else
+				command.result.complete(result.has("r") ? result.get("r").toString() : "null");
+		}
+	}
+
+	/**
+	 * Fails all the commands of a batch with the given error
+	 * 
+	 * @param commands
+	 * @param error
+	 */
+	private void failAll(List<PendingCommand> commands, Throwable error)
+	{
+		for (PendingCommand command : commands)
+			command.result.completeExceptionally(error);
+	}
+
+	/**
+	 * Frees the slot and the nodes of a completed batch, and sends the queued
+	 * batches which can be sent now, if any
+	 * 
+	 * @param commands
+	 *            the completed batch
+	 */
+	private void commandDone(List<PendingCommand> commands)
+	{
+		synchronized (this.commandQueue)
 		{
-			throw new Exception("Can't read json from Z-Way server: " + response.toString());
+			this.inFlightCommands--;
+			for (PendingCommand command : commands)
+				if (command.nodeId != null)
+				{
+					Integer count = this.inFlightNodes.get(command.nodeId);
+					if ((count == null) || (count <= 1))
+						this.inFlightNodes.remove(command.nodeId);
+					else
+						this.inFlightNodes.put(command.nodeId, count - 1);
+				}
 		}
 
-		return response.body();
+		this.sendQueued();
+	}
+
+	/**
+	 * @return the number of commands sent so far
+	 */
+	public long getSentCommands()
+	{
+		return this.sentCommands.get();
+	}
+
+	/**
+	 * @return the number of requests sent so far, each one carrying one or
+	 *         more commands
+	 */
+	public long getSentRequests()
+	{
+		return this.sentRequests.get();
+	}
+
+	/**
+	 * Stops the threads of the data and command lanes, no request can be sent
+	 * afterwards
+	 */
+	public void close()
+	{
+		this.dataLane.close();
+		this.commandLane.close();
+	}
+
+	/**
+	 * @return the lane of the data fetches, with its latency statistics
+	 */
+	public HttpLane getDataLane()
+	{
+		return this.dataLane;
+	}
+
+	/**
+	 * @return the lane of the commands, with its latency statistics
+	 */
+	public HttpLane getCommandLane()
+	{
+		return this.commandLane;
 	}
 
 	public String pingDevice(String sNodeId) throws Exception
@@ -230,4 +1169,87 @@ public class ConnectionManager
 	{
 		return sLastError;
 	}
+
+	/**
+	 * The commands collected in the current batching window, and the length
+	 * of their script, guarded by the collector itself
+	 */
+	private static class BatchCollector
+	{
+		// true if collecting priority commands
+		private final boolean priority;
+
+		private List<PendingCommand> batch = new ArrayList<PendingCommand>();
+		private int batchLength = 0;
+
+		public BatchCollector(boolean priority)
+		{
+			this.priority = priority;
+		}
+
+		/**
+		 * Takes the current batch and starts a new one
+		 * 
+		 * @return the commands in the batch
+		 */
+		public List<PendingCommand> takeBatch()
+		{
+			List<PendingCommand> commands = this.batch;
+			this.batch = new ArrayList<PendingCommand>();
+			this.batchLength = 0;
+			return commands;
+		}
+	}
+
+	/**
+	 * A command waiting to be sent, or in flight, with its future answer
+	 */
+	private static class PendingCommand
+	{
+		// the command to run
+		private final String command;
+
+		// the command wrapped for a batch script
+		private final String script;
+
+		// the addressed node, null if the command does not address a device
+		private final Integer nodeId;
+
+		// the server answer
+		private final CompletableFuture<String> result;
+
+		public PendingCommand(String command)
+		{
+			this.command = command;
+			this.script = "try{r.push({r:" + command + "});}catch(e){r.push({e:String(e)});}";
+			this.nodeId = PendingCommand.nodeOf(command);
+			this.result = new CompletableFuture<String>();
+		}
+
+		/**
+		 * Gets the node addressed by a command, i.e., N in "devices[N]...."
+		 * 
+		 * @param command
+		 * @return the node id, null if the command does not address a device
+		 */
+		private static Integer nodeOf(String command)
+		{
+			String prefix = "devices[";
+			if (!command.startsWith(prefix))
+				return null;
+
+			int end = command.indexOf(']', prefix.length());
+			if (end < 0)
+				return null;
+
+			try
+			{
+				return Integer.valueOf(command.substring(prefix.length(), end).trim());
+			}
+			catch (NumberFormatException e)
+			{
+				return null;
+			}
+		}
+	}
 }
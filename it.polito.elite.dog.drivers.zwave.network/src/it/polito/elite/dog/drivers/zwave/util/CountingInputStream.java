@@ -0,0 +1,84 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream counting the bytes read (or skipped) from the wrapped
+ * stream, e.g., to measure the bytes received on the wire.
+ */
+public class CountingInputStream extends FilterInputStream
+{
+	// the bytes read so far
+	private long count = 0;
+
+	/**
+	 * Creates a new counting stream
+	 *
+	 * @param in
+	 *            the stream to count
+	 */
+	public CountingInputStream(InputStream in)
+	{
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		int b = super.read();
+		if (b >= 0)
+			this.count++;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		int n = super.read(b, off, len);
+		if (n > 0)
+			this.count += n;
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException
+	{
+		long skipped = super.skip(n);
+		this.count += skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		// a reset would make the count meaningless
+		return false;
+	}
+
+	/**
+	 * @return the number of bytes read so far
+	 */
+	public long getCount()
+	{
+		return this.count;
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.util;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * An HTTP lane towards the Z-Way server: a client with its own connection
+ * pool and its own threads, so that the traffic of a lane (e.g., long data
+ * downloads) never delays the requests of another lane (e.g., user commands).
+ * It also keeps track of the latency of its requests, i.e., the time until the
+ * response headers are received.
+ */
+public class HttpLane
+{
+	// the lane name, used for threads and statistics
+	private final String name;
+
+	// the lane client, and the executor of its threads
+	private final HttpClient client;
+	private final ExecutorService executor;
+
+	// the latency statistics
+	private long requestCount = 0;
+	private long totalLatencyNanos = 0;
+	private long maxLatencyNanos = 0;
+
+	/**
+	 * Creates a new lane
+	 *
+	 * @param name
+	 *            the lane name
+	 * @param builder
+	 *            the builder of the client, configured with everything but
+	 *            the executor
+	 */
+	public HttpLane(final String name, HttpClient.Builder builder)
+	{
+		this.name = name;
+
+		this.executor = HttpLane.newExecutor(name);
+		this.client = builder.executor(this.executor).build();
+	}
+
+	/**
+	 * Creates the executor of the threads of a lane. It must not refer to the
+	 * lane: the client threads only stop once the client is unreachable.
+	 *
+	 * @param name
+	 *            the lane name
+	 * @return the executor
+	 */
+	private static ExecutorService newExecutor(final String name)
+	{
+		// idle threads are released, daemon threads do not keep the
+		// framework alive
+		return Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "zwave-" + name + "-lane-" + this.count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Stops the threads of the lane once the requests in progress are
+	 * completed
+	 */
+	public void close()
+	{
+		this.executor.shutdown();
+	}
+
+	/**
+	 * Sends the given request, waiting for the response
+	 *
+	 * @param request
+	 * @param bodyHandler
+	 * @return the response
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> bodyHandler)
+			throws IOException, InterruptedException
+	{
+		long start = System.nanoTime();
+		try
+		{
+			return this.client.send(request, bodyHandler);
+		}
+		finally
+		{
+			this.recordLatency(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Sends the given request, without waiting for the response
+	 *
+	 * @param request
+	 * @param bodyHandler
+	 * @return the future response
+	 */
+	public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, BodyHandler<T> bodyHandler)
+	{
+		final long start = System.nanoTime();
+
+		return this.client.sendAsync(request, bodyHandler).whenComplete(new BiConsumer<HttpResponse<T>, Throwable>()
+		{
+			@Override
+			public void accept(HttpResponse<T> response, Throwable error)
+			{
+				recordLatency(System.nanoTime() - start);
+			}
+		});
+	}
+
+	/**
+	 * Updates the latency statistics
+	 *
+	 * @param latencyNanos
+	 */
+	private synchronized void recordLatency(long latencyNanos)
+	{
+		this.requestCount++;
+		this.totalLatencyNanos += latencyNanos;
+		if (latencyNanos > this.maxLatencyNanos)
+			this.maxLatencyNanos = latencyNanos;
+	}
+
+	/**
+	 * @return the lane name
+	 */
+	public String getName()
+	{
+		return this.name;
+	}
+
+	/**
+	 * @return the number of requests completed so far
+	 */
+	public synchronized long getRequestCount()
+	{
+		return this.requestCount;
+	}
+
+	/**
+	 * @return the mean request latency, in nanoseconds
+	 */
+	public synchronized long getMeanLatencyNanos()
+	{
+		return (this.requestCount > 0) ? this.totalLatencyNanos / this.requestCount : 0;
+	}
+
+	/**
+	 * @return the maximum request latency, in nanoseconds
+	 */
+	public synchronized long getMaxLatencyNanos()
+	{
+		return this.maxLatencyNanos;
+	}
+}
@@ -18,43 +18,464 @@
 package it.polito.elite.dog.drivers.zwave.util;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import it.polito.elite.dog.drivers.zwave.model.zway.json.ZWaveModelTree;
 
+import it.polito.elite.dog.drivers.zwave.model.zway.json.CommandClasses;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.CommandClassesData;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.Controller;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.ControllerData;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.DataElemObject;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.Device;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.DeviceData;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.Instance;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.InstanceData;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.ZWaveModelTree;
 
+/**
+ * Applies the changes returned by the Z-Way server for an incremental query
+ * (/ZWaveAPI/Data/{since}) to a {@link ZWaveModelTree}. Every key of the
+ * received object is a dotted path, e.g.,
+ * devices.26.instances.0.commandClasses.49.data.1.val, whose value replaces the
+ * corresponding element of the model.
+ * 
+ * The given tree is never modified, as it may be concurrently read: the update
+ * builds a new tree (with the next generation number) by copying only the
+ * elements along the paths of the changes, while all the other elements are
+ * shared with the given tree. Every element is copied at most once per update.
+ */
 public class JsonUpdate 
 {
-	@SuppressWarnings("deprecation")
-	public static ZWaveModelTree updateModel(ObjectMapper mapper, JsonNode zWaveTree, String json) throws JsonProcessingException, IOException
+	// the path elements of the Z-Way data tree
+	private static final String UPDATE_TIME = "updateTime";
+	private static final String AREAS = "areas";
+	private static final String CONTROLLER = "controller";
+	private static final String DEVICES = "devices";
+	private static final String INSTANCES = "instances";
+	private static final String COMMAND_CLASSES = "commandClasses";
+	private static final String DATA = "data";
+
+	// the mapper used to convert the changed elements
+	private ObjectMapper mapper;
+	
+	// collects the changed device instances and controller data
+	private ZWaveModelChanges changed;
+	
+	// the new tree
+	private ZWaveModelTree tree;
+	
+	// the elements created by this update, which can be modified in place
+	private Set<Object> owned;
+	
+	private JsonUpdate(ObjectMapper mapper, ZWaveModelTree zWaveModelTree, ZWaveModelChanges changed)
+	{
+		this.mapper = mapper;
+		this.changed = changed;
+		this.tree = zWaveModelTree.copy();
+		this.tree.setGeneration(zWaveModelTree.getGeneration() + 1);
+		this.owned = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+	}
+	
+	/**
+	 * Applies the given changes to a copy of the given model tree, which is
+	 * left untouched.
+	 * 
+	 * @param mapper
+	 *            the {@link ObjectMapper} used to convert the changed elements
+	 * @param zWaveModelTree
+	 *            the model to update
+	 * @param changes
+	 *            the changes received from the Z-Way server
+	 * @param changed
+	 *            collects the device instances and controller data changed
+	 *            by the update
+	 * @return the updated {@link ZWaveModelTree} or null if the changes refer
+	 *         to parts of the tree which are not locally available, in which
+	 *         case a full update is needed.
+	 */
+	public static ZWaveModelTree updateModel(ObjectMapper mapper, ZWaveModelTree zWaveModelTree, JsonNode changes,
+			ZWaveModelChanges changed) throws JsonProcessingException, IOException
 	{
-		JsonNode node = mapper.readTree(json);
-		Iterator<Entry<String, JsonNode>> it = node.fields();
+		JsonUpdate update = new JsonUpdate(mapper, zWaveModelTree, changed);
+		Iterator<Entry<String, JsonNode>> it = changes.fields();
 		
 		while(it.hasNext())
 		{
 			Entry<String, JsonNode> n = it.next();
-			String sNodeKey = n.getKey();
-			int nIndex = sNodeKey.indexOf(".");
-			int nStart = 0;
 			
-			JsonNode x = zWaveTree;
-			while(nIndex > 0)
+			// the change cannot be applied, e.g., it refers to a just
+			// included device
+			if (!update.applyChange(n.getKey().split("\\."), n.getValue()))
+				return null;
+		}
+		
+		return update.tree;
+	}
+	
+	/**
+	 * Resolves the given path on the model tree and replaces the addressed
+	 * element with the given value
+	 * 
+	 * @return true if the change has been applied, false otherwise
+	 */
+	private boolean applyChange(String[] path, JsonNode value) throws JsonProcessingException
+	{
+		switch (path[0])
+		{
+			case UPDATE_TIME:
+			{
+				this.tree.setUpdateTime(value.asLong());
+				return path.length == 1;
+			}
+			case AREAS:
+			{
+				// areas are not used by drivers
+				return true;
+			}
+			case CONTROLLER:
 			{
-				x = x.path(sNodeKey.substring(nStart, nIndex));
-				nStart = nIndex + 1;
-				nIndex = sNodeKey.indexOf(".",nStart);
+				return this.applyControllerChange(path, value);
+			}
+			case DEVICES:
+			{
+				return this.applyDeviceChange(path, value);
+			}
+			default:
+			{
+				return false;
+			}
+		}
+	}
+	
+	// controller[.data[.<elem>]*]
+	private boolean applyControllerChange(String[] path, JsonNode value) throws JsonProcessingException
+	{
+		this.changed.setControllerChanged();
+		
+		if (path.length == 1)
+		{
+			this.tree.setController(this.own(this.mapper.treeToValue(value, Controller.class)));
+			return true;
+		}
+		
+		if ((this.tree.getController() == null) || (!path[1].equals(DATA)))
+			return false;
+		
+		Controller controller = this.tree.getController();
+		if (!this.owned.contains(controller))
+		{
+			controller = this.own(controller.copy());
+			this.tree.setController(controller);
+		}
+		
+		if (path.length == 2)
+		{
+			controller.setData(this.own(this.mapper.treeToValue(value, ControllerData.class)));
+			return true;
+		}
+		
+		ControllerData data = controller.getData();
+		if (data == null)
+			return false;
+		if (!this.owned.contains(data))
+		{
+			data = this.own(data.copy());
+			controller.setData(data);
+		}
+		
+		return this.applyDataChange(data.getAllData(), path, 2, value);
+	}
+	
+	// devices[.<nodeId>[.data[.<elem>]*|.instances[.<instanceId>[...]]]]
+	private boolean applyDeviceChange(String[] path, JsonNode value) throws JsonProcessingException
+	{
+		if (path.length == 1)
+		{
+			Map<Integer, Device> devices = this.mapper.convertValue(value, new TypeReference<Map<Integer, Device>>()
+			{
+			});
+			for (Device device : devices.values())
+				this.ownDevice(device);
+			this.tree.setDevices(devices);
+			this.changed.setFull();
+			return true;
+		}
+		
+		Integer nodeId = toId(path[1]);
+		if ((nodeId == null) || (this.tree.getDevices() == null))
+			return false;
+		
+		if (path.length == 2)
+		{
+			this.tree.getDevices().put(nodeId, this.ownDevice(this.mapper.treeToValue(value, Device.class)));
+			this.changed.addChangedDevice(nodeId);
+			return true;
+		}
+		
+		Device device = this.tree.getDevices().get(nodeId);
+		if (device == null)
+			return false;
+		if (!this.owned.contains(device))
+		{
+			device = this.own(device.copy());
+			this.tree.getDevices().put(nodeId, device);
+		}
+		
+		if (path[2].equals(DATA))
+		{
+			// device data are shared by all the instances
+			this.changed.addChangedDevice(nodeId);
+			
+			if (path.length == 3)
+			{
+				device.setData(this.own(this.mapper.treeToValue(value, DeviceData.class)));
+				return true;
 			}
 			
-			String sKey = sNodeKey.substring(nStart);
-			((ObjectNode)x).put(sKey, n.getValue());
+			DeviceData data = device.getData();
+			if (data == null)
+				return false;
+			if (!this.owned.contains(data))
+			{
+				data = this.own(data.copy());
+				device.setData(data);
+			}
+			
+			return this.applyDataChange(data.getAllData(), path, 3, value);
+		}
+		else if (path[2].equals(INSTANCES))
+		{
+			if (path.length == 3)
+			{
+				this.changed.addChangedDevice(nodeId);
+				Map<Integer, Instance> instances = this.mapper.convertValue(value,
+						new TypeReference<Map<Integer, Instance>>()
+						{
+						});
+				for (Entry<Integer, Instance> instance : instances.entrySet())
+				{
+					instance.getValue().setInstanceId(instance.getKey());
+					this.ownInstance(instance.getValue());
+				}
+				device.setInstances(instances);
+				return true;
+			}
+			return this.applyInstanceChange(nodeId, device, path, value);
 		}
 		
-		return mapper.treeToValue(zWaveTree, ZWaveModelTree.class);
+		return false;
+	}
+	
+	// instances.<instanceId>[.data[.<elem>]*|.commandClasses[.<ccId>[...]]]
+	private boolean applyInstanceChange(int nodeId, Device device, String[] path, JsonNode value)
+			throws JsonProcessingException
+	{
+		Integer instanceId = toId(path[3]);
+		if ((instanceId == null) || (device.getInstances() == null))
+			return false;
+		
+		this.changed.addChangedInstance(nodeId, instanceId);
+		
+		if (path.length == 4)
+		{
+			Instance instance = this.mapper.treeToValue(value, Instance.class);
+			instance.setInstanceId(instanceId);
+			device.getInstances().put(instanceId, this.ownInstance(instance));
+			return true;
+		}
+		
+		Instance instance = device.getInstances().get(instanceId);
+		if (instance == null)
+			return false;
+		if (!this.owned.contains(instance))
+		{
+			instance = this.own(instance.copy());
+			device.getInstances().put(instanceId, instance);
+		}
+		
+		if (path[4].equals(DATA))
+		{
+			if (path.length == 5)
+			{
+				instance.setData(this.own(this.mapper.treeToValue(value, InstanceData.class)));
+				return true;
+			}
+			
+			InstanceData data = instance.getData();
+			if (data == null)
+				return false;
+			if (!this.owned.contains(data))
+			{
+				data = this.own(data.copy());
+				instance.setData(data);
+			}
+			
+			return this.applyDataChange(data.getAllData(), path, 5, value);
+		}
+		else if (path[4].equals(COMMAND_CLASSES))
+		{
+			if (path.length == 5)
+			{
+				Map<Integer, CommandClasses> commandClasses = this.mapper.convertValue(value,
+						new TypeReference<Map<Integer, CommandClasses>>()
+						{
+						});
+				for (CommandClasses commandClass : commandClasses.values())
+					this.own(commandClass);
+				instance.setCommandClasses(commandClasses);
+				return true;
+			}
+			return this.applyCommandClassChange(instance, path, value);
+		}
+		
+		return false;
+	}
+	
+	// commandClasses.<ccId>[.data[.<elem>]*]
+	private boolean applyCommandClassChange(Instance instance, String[] path, JsonNode value)
+			throws JsonProcessingException
+	{
+		Integer ccId = toId(path[5]);
+		if ((ccId == null) || (instance.getCommandClasses() == null))
+			return false;
+		
+		if (path.length == 6)
+		{
+			instance.getCommandClasses().put(ccId,
+					this.own(this.mapper.treeToValue(value, CommandClasses.class)));
+			return true;
+		}
+		
+		CommandClasses commandClass = instance.getCommandClasses().get(ccId);
+		if ((commandClass == null) || (!path[6].equals(DATA)))
+			return false;
+		if (!this.owned.contains(commandClass))
+		{
+			commandClass = this.own(commandClass.copy());
+			instance.getCommandClasses().put(ccId, commandClass);
+		}
+		
+		if (path.length == 7)
+		{
+			commandClass.setCommandClassesData(this.own(this.mapper.treeToValue(value, CommandClassesData.class)));
+			return true;
+		}
+		
+		CommandClassesData data = commandClass.getCommandClassesData();
+		if (data == null)
+			return false;
+		if (!this.owned.contains(data))
+		{
+			data = this.own(data.copy());
+			commandClass.setCommandClassesData(data);
+		}
+		
+		return this.applyDataChange(data.getAllData(), path, 7, value);
+	}
+	
+	/**
+	 * Walks the data elements starting from the given (owned) map, copying
+	 * the ones not yet owned, and replaces the one addressed by the path
+	 * elements from start onwards.
+	 */
+	private boolean applyDataChange(Map<String, DataElemObject> data, String[] path, int start, JsonNode value)
+			throws JsonProcessingException
+	{
+		// the data element being walked, null while at the given map
+		DataElemObject parent = null;
+		
+		for (int i = start; i < path.length - 1; i++)
+		{
+			DataElemObject elem = (parent == null) ? data.get(path[i]) : parent.getDataElem(path[i]);
+			if (elem == null)
+				return false;
+			if (!this.owned.contains(elem))
+			{
+				elem = this.own(elem.copy());
+				JsonUpdate.putDataElem(data, parent, path[i], elem);
+			}
+			parent = elem;
+		}
+		
+		// the new element is not marked as owned, as changes to its
+		// descendants are rare: it is simply copied if needed
+		JsonUpdate.putDataElem(data, parent, path[path.length - 1],
+				this.mapper.treeToValue(value, DataElemObject.class));
+		return true;
+	}
+	
+	/**
+	 * Puts a data element in the given map, or among the children of the
+	 * given parent, if any (the children map of an element cannot be modified
+	 * directly)
+	 */
+	private static void putDataElem(Map<String, DataElemObject> data, DataElemObject parent, String name,
+			DataElemObject elem)
+	{
+		if (parent == null)
+			data.put(name, elem);
+		else
+			parent.setAllData(name, elem);
+	}
+	
+	/**
+	 * Marks the given element as created by this update
+	 */
+	private <T> T own(T element)
+	{
+		if (element != null)
+			this.owned.add(element);
+		return element;
+	}
+	
+	/**
+	 * Marks the given just deserialized device, and its instances, as created
+	 * by this update
+	 */
+	private Device ownDevice(Device device)
+	{
+		if ((device != null) && (device.getInstances() != null))
+			for (Instance instance : device.getInstances().values())
+				this.ownInstance(instance);
+		return this.own(device);
+	}
+	
+	/**
+	 * Marks the given just deserialized instance, and its command classes, as
+	 * created by this update
+	 */
+	private Instance ownInstance(Instance instance)
+	{
+		if ((instance != null) && (instance.getCommandClasses() != null))
+			for (CommandClasses commandClass : instance.getCommandClasses().values())
+				this.own(commandClass);
+		return this.own(instance);
+	}
+	
+	/**
+	 * Parses a numeric path element, i.e., a node, instance or command class
+	 * id
+	 * 
+	 * @return the id or null if the element is not numeric
+	 */
+	private static Integer toId(String pathElement)
+	{
+		try
+		{
+			return Integer.valueOf(pathElement);
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
 	}
 }
@@ -0,0 +1,203 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An executor running tasks with different keys (e.g., node ids) in parallel
+ * on a fixed pool of threads, and tasks with the same key one at a time, in
+ * submission order.
+ */
+public class KeyedSerialExecutor
+{
+	// the maximum number of tasks of a key run in a row, before letting the
+	// other keys run
+	private static final int MAX_TASKS_IN_A_ROW = 16;
+
+	// the pool running the tasks
+	private final ExecutorService pool;
+
+	// the task queues, by key
+	private final ConcurrentHashMap<Integer, SerialQueue> queues;
+
+	/**
+	 * Creates a new executor
+	 *
+	 * @param name
+	 *            the executor name, used for threads
+	 * @param nThreads
+	 *            the number of threads, i.e., of keys served in parallel
+	 */
+	public KeyedSerialExecutor(final String name, int nThreads)
+	{
+		this.queues = new ConcurrentHashMap<Integer, SerialQueue>();
+
+		// daemon threads do not keep the framework alive
+		this.pool = Executors.newFixedThreadPool(Math.max(1, nThreads), new ThreadFactory()
+		{
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "zwave-" + name + "-" + this.count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Runs the given task after all the tasks previously submitted with the
+	 * same key
+	 *
+	 * @param key
+	 *            the task key
+	 * @param task
+	 *            the task to run
+	 * @throws RejectedExecutionException
+	 *             if the executor has been shut down
+	 */
+	public void execute(int key, Runnable task)
+	{
+		if (this.pool.isShutdown())
+			throw new RejectedExecutionException("Executor shut down");
+
+		SerialQueue queue = this.queues.get(key);
+		if (queue == null)
+		{
+			// keys are few (e.g., node ids), queues are kept once created
+			SerialQueue newQueue = new SerialQueue();
+			queue = this.queues.putIfAbsent(key, newQueue);
+			if (queue == null)
+				queue = newQueue;
+		}
+
+		queue.add(task);
+	}
+
+	/**
+	 * Stops the executor: the tasks already submitted are run, the later ones
+	 * are rejected, and the threads terminate once idle
+	 */
+	public void shutdown()
+	{
+		this.pool.shutdown();
+	}
+
+	/**
+	 * @return true if the executor has been shut down
+	 */
+	public boolean isShutdown()
+	{
+		return this.pool.isShutdown();
+	}
+
+	/**
+	 * The queue of the tasks with the same key, scheduled on the pool while
+	 * not empty
+	 */
+	private class SerialQueue implements Runnable
+	{
+		// the tasks waiting to run
+		private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+
+		// true if the queue is scheduled on the pool or running
+		private boolean scheduled = false;
+
+		/**
+		 * Adds a task, scheduling the queue if idle
+		 *
+		 * @param task
+		 */
+		public void add(Runnable task)
+		{
+			synchronized (this)
+			{
+				this.tasks.add(task);
+				if (this.scheduled)
+					return;
+				this.scheduled = true;
+			}
+
+			try
+			{
+				pool.execute(this);
+			}
+			catch (RejectedExecutionException e)
+			{
+				// shut down meanwhile, the queue will never run
+				synchronized (this)
+				{
+					this.tasks.clear();
+					this.scheduled = false;
+				}
+				throw e;
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			while (true)
+			{
+				for (int i = 0; i < MAX_TASKS_IN_A_ROW; i++)
+				{
+					Runnable task;
+					synchronized (this)
+					{
+						task = this.tasks.poll();
+						if (task == null)
+						{
+							this.scheduled = false;
+							return;
+						}
+					}
+
+					try
+					{
+						task.run();
+					}
+					catch (RuntimeException e)
+					{
+						// a failing task must not stop the following ones
+						Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+					}
+				}
+
+				// more tasks, let the other keys run first
+				try
+				{
+					pool.execute(this);
+					return;
+				}
+				catch (RejectedExecutionException e)
+				{
+					// shut down, run the tasks already submitted right away
+				}
+			}
+		}
+	}
+}
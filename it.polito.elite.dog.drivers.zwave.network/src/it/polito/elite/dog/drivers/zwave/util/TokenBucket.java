@@ -0,0 +1,199 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket rate limiter: tokens are added at a constant rate up to the
+ * bucket size, and each operation takes one token, waiting for it if the
+ * bucket is empty. Reservations are served in order, each one waiting for the
+ * token after the previous one. It also keeps track of the time spent waiting.
+ */
+public class TokenBucket
+{
+	// the refill rate, in tokens per nanosecond, 0 or less means unlimited
+	private double ratePerNano;
+
+	// the maximum number of tokens, i.e., the maximum burst size
+	private double size;
+
+	// the available tokens, negative when operations are waiting
+	private double tokens;
+
+	// the last refill time
+	private long lastRefillTime;
+
+	// the wait statistics
+	private long reservedCount = 0;
+	private long totalWaitNanos = 0;
+	private long maxWaitNanos = 0;
+	private long rejectedCount = 0;
+
+	/**
+	 * Creates a new token bucket, initially full
+	 *
+	 * @param tokensPerSecond
+	 *            the refill rate, 0 or less means unlimited
+	 * @param size
+	 *            the maximum burst size, at least 1
+	 */
+	public TokenBucket(double tokensPerSecond, int size)
+	{
+		this.ratePerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.size = Math.max(1, size);
+		this.tokens = this.size;
+		this.lastRefillTime = System.nanoTime();
+	}
+
+	/**
+	 * Changes the refill rate and the bucket size, the tokens available so far
+	 * are kept, up to the new size, and the reservations already made keep
+	 * their wait time
+	 *
+	 * @param tokensPerSecond
+	 *            the refill rate, 0 or less means unlimited
+	 * @param size
+	 *            the maximum burst size, at least 1
+	 */
+	public synchronized void setRate(double tokensPerSecond, int size)
+	{
+		// refill at the old rate first, a bucket which was unlimited starts
+		// full
+		boolean unlimited = (this.ratePerNano <= 0);
+		this.refill();
+
+		this.ratePerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.size = Math.max(1, size);
+		this.tokens = unlimited ? this.size : Math.min(this.size, this.tokens);
+	}
+
+	/**
+	 * Adds the tokens accrued since the last refill
+	 */
+	private void refill()
+	{
+		long now = System.nanoTime();
+		if (this.ratePerNano > 0)
+			this.tokens = Math.min(this.size, this.tokens + (now - this.lastRefillTime) * this.ratePerNano);
+		this.lastRefillTime = now;
+	}
+
+	/**
+	 * Takes a token, without waiting for it
+	 *
+	 * @return the time, in nanoseconds, after which the token is available,
+	 *         i.e., the time to wait before performing the operation
+	 */
+	public long reserve()
+	{
+		return this.reserve(1);
+	}
+
+	/**
+	 * Takes the given number of tokens at once, without waiting for them, so
+	 * that the corresponding operations can be performed together
+	 *
+	 * @param count
+	 *            the number of tokens to take
+	 * @return the time, in nanoseconds, after which all the tokens are
+	 *         available, i.e., the time to wait before performing the
+	 *         operations
+	 */
+	public long reserve(int count)
+	{
+		return this.tryReserve(count, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Takes the given number of tokens at once, unless they are available
+	 * too far in the future: this bounds the backlog of the operations
+	 * waiting for tokens
+	 *
+	 * @param count
+	 *            the number of tokens to take
+	 * @param maxWaitNanos
+	 *            the maximum time to wait for the tokens
+	 * @return the time, in nanoseconds, after which all the tokens are
+	 *         available, or -1 if it exceeds the maximum wait, in which case
+	 *         no token is taken
+	 */
+	public synchronized long tryReserve(int count, long maxWaitNanos)
+	{
+		long waitNanos = 0;
+
+		if (this.ratePerNano > 0)
+		{
+			this.refill();
+
+			// the tokens left after taking them
+			double left = this.tokens - count;
+			if (left < 0)
+				waitNanos = (long) Math.ceil(-left / this.ratePerNano);
+
+			if (waitNanos > maxWaitNanos)
+			{
+				this.rejectedCount += count;
+				return -1;
+			}
+
+			this.tokens = left;
+		}
+
+		// update the statistics
+		this.reservedCount += count;
+		this.totalWaitNanos += waitNanos * count;
+		if (waitNanos > this.maxWaitNanos)
+			this.maxWaitNanos = waitNanos;
+
+		return waitNanos;
+	}
+
+	/**
+	 * @return the mean time waited for a token, in nanoseconds
+	 */
+	public synchronized long getMeanWaitNanos()
+	{
+		return (this.reservedCount > 0) ? this.totalWaitNanos / this.reservedCount : 0;
+	}
+
+	/**
+	 * @return the maximum time waited for a token, in nanoseconds
+	 */
+	public synchronized long getMaxWaitNanos()
+	{
+		return this.maxWaitNanos;
+	}
+
+	/**
+	 * @return the number of tokens not taken as they were available too far
+	 *         in the future
+	 */
+	public synchronized long getRejectedCount()
+	{
+		return this.rejectedCount;
+	}
+
+	/**
+	 * @return the number of tokens taken so far
+	 */
+	public synchronized long getReservedCount()
+	{
+		return this.reservedCount;
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.util;
+
+/**
+ * Thrown, without contacting the Z-Way server, when the server is considered
+ * unreachable, i.e., while the circuit breaker of its connection is open.
+ */
+public class ZWaveGatewayUnavailableException extends Exception
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param message
+	 */
+	public ZWaveGatewayUnavailableException(String message)
+	{
+		super(message);
+	}
+}
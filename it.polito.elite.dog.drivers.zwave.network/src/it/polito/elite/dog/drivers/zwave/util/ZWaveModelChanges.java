@@ -0,0 +1,167 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * The set of model elements changed by one or more updates of the
+ * {@link it.polito.elite.dog.drivers.zwave.model.zway.json.ZWaveModelTree},
+ * at the granularity needed to dispatch them to drivers, i.e., per device
+ * instance, plus the controller data.
+ */
+public class ZWaveModelChanges
+{
+	// true if the whole tree has been replaced
+	private boolean full;
+
+	// true if the controller data changed
+	private boolean controllerChanged;
+
+	// the changed instances per node id, an empty set means that the device
+	// changed as a whole (e.g., its data)
+	private Map<Integer, Set<Integer>> changedInstances;
+
+	public ZWaveModelChanges()
+	{
+		this.changedInstances = new HashMap<Integer, Set<Integer>>();
+	}
+
+	/**
+	 * Marks the whole tree as changed
+	 */
+	public void setFull()
+	{
+		this.full = true;
+	}
+
+	/**
+	 * Marks the controller data as changed
+	 */
+	public void setControllerChanged()
+	{
+		this.controllerChanged = true;
+	}
+
+	/**
+	 * Marks all the instances of the given device as changed
+	 *
+	 * @param nodeId
+	 */
+	public void addChangedDevice(int nodeId)
+	{
+		Set<Integer> instances = this.changedInstances.get(nodeId);
+
+		if (instances == null)
+			this.changedInstances.put(nodeId, new HashSet<Integer>());
+		else
+			instances.clear();
+	}
+
+	/**
+	 * Marks the given device instance as changed
+	 *
+	 * @param nodeId
+	 * @param instanceId
+	 */
+	public void addChangedInstance(int nodeId, int instanceId)
+	{
+		Set<Integer> instances = this.changedInstances.get(nodeId);
+
+		if (instances == null)
+		{
+			instances = new HashSet<Integer>();
+			instances.add(instanceId);
+			this.changedInstances.put(nodeId, instances);
+		}
+		// an empty set already covers all the instances
+		else if (!instances.isEmpty())
+			instances.add(instanceId);
+	}
+
+	/**
+	 * Adds the given changes to this set of changes
+	 *
+	 * @param changes
+	 */
+	public void merge(ZWaveModelChanges changes)
+	{
+		this.full |= changes.full;
+		this.controllerChanged |= changes.controllerChanged;
+
+		for (Entry<Integer, Set<Integer>> device : changes.changedInstances.entrySet())
+		{
+			if (device.getValue().isEmpty())
+				this.addChangedDevice(device.getKey());
+			else
+				for (Integer instanceId : device.getValue())
+					this.addChangedInstance(device.getKey(), instanceId);
+		}
+	}
+
+	/**
+	 * @return true if the whole tree has been replaced
+	 */
+	public boolean isFull()
+	{
+		return full;
+	}
+
+	/**
+	 * @return true if the controller data changed
+	 */
+	public boolean isControllerChanged()
+	{
+		return this.full || this.controllerChanged;
+	}
+
+	/**
+	 * @param nodeId
+	 * @return true if any element of the given device changed
+	 */
+	public boolean isDeviceChanged(int nodeId)
+	{
+		return this.full || this.changedInstances.containsKey(nodeId);
+	}
+
+	/**
+	 * @param nodeId
+	 * @param instanceId
+	 * @return true if the given device instance, or its device, changed
+	 */
+	public boolean isInstanceChanged(int nodeId, int instanceId)
+	{
+		if (this.full)
+			return true;
+
+		Set<Integer> instances = this.changedInstances.get(nodeId);
+		return (instances != null) && (instances.isEmpty() || instances.contains(instanceId));
+	}
+
+	/**
+	 * @return true if nothing changed
+	 */
+	public boolean isEmpty()
+	{
+		return !this.full && !this.controllerChanged && this.changedInstances.isEmpty();
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.model.zway.json;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares the parsing of a Z-Way model tree by the plain Jackson databind
+ * and by the streaming reader of {@link ZWaveJsonModule}, reporting the time
+ * per parse and the garbage collections of each. That both build equal model
+ * trees is checked by {@link ZWaveModelReaderTest}.
+ *
+ * Usage: ZWaveModelBenchmark [full model json] [iterations], the model of
+ * {@link ZWaveModelReaderTest} is parsed if none is given.
+ */
+public class ZWaveModelBenchmark
+{
+	// the default number of measured parses
+	private static final int DEFAULT_ITERATIONS = 200;
+
+	public static void main(String[] args) throws IOException
+	{
+		byte[] full = (args.length > 0) ? Files.readAllBytes(new File(args[0]).toPath())
+				: ZWaveModelBenchmark.readResource(ZWaveModelReaderTest.FULL_DATA);
+		int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+		ObjectMapper databind = new ObjectMapper();
+		ObjectMapper streaming = ZWaveJsonModule.createMapper();
+
+		// warm up both paths, then measure them
+		ZWaveModelBenchmark.measure(databind, full, iterations);
+		ZWaveModelBenchmark.measure(streaming, full, iterations);
+		ZWaveModelBenchmark.report("databind", ZWaveModelBenchmark.measure(databind, full, iterations), iterations,
+				full.length);
+		ZWaveModelBenchmark.report("streaming", ZWaveModelBenchmark.measure(streaming, full, iterations), iterations,
+				full.length);
+	}
+
+	/**
+	 * @param resource
+	 * @return the content of the given resource
+	 * @throws IOException
+	 */
+	private static byte[] readResource(String resource) throws IOException
+	{
+		try (InputStream in = ZWaveModelBenchmark.class.getResourceAsStream(resource))
+		{
+			if (in == null)
+				throw new IOException("Missing resource " + resource);
+			return in.readAllBytes();
+		}
+	}
+
+	/**
+	 * Parses the given model tree the given number of times
+	 *
+	 * @param mapper
+	 * @param full
+	 * @param iterations
+	 * @return the elapsed nanoseconds, the number of collections and the
+	 *         collection milliseconds
+	 * @throws IOException
+	 */
+	private static long[] measure(ObjectMapper mapper, byte[] full, int iterations) throws IOException
+	{
+		System.gc();
+		long[] gcBefore = ZWaveModelBenchmark.gcStats();
+		long start = System.nanoTime();
+
+		// keep the last tree alive, so that the parse cannot be optimized away
+		ZWaveModelTree tree = null;
+		for (int i = 0; i < iterations; i++)
+			tree = mapper.readValue(full, ZWaveModelTree.class);
+
+		long elapsed = System.nanoTime() - start;
+		long[] gcAfter = ZWaveModelBenchmark.gcStats();
+		if (tree == null)
+			throw new IllegalStateException("No model tree parsed");
+
+		return new long[] { elapsed, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1] };
+	}
+
+	/**
+	 * @return the total number of collections and collection milliseconds
+	 *         of all the garbage collectors
+	 */
+	private static long[] gcStats()
+	{
+		long count = 0;
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			count += Math.max(0, gc.getCollectionCount());
+			time += Math.max(0, gc.getCollectionTime());
+		}
+
+		return new long[] { count, time };
+	}
+
+	/**
+	 * Prints the results of a measure
+	 *
+	 * @param name
+	 * @param result
+	 * @param iterations
+	 * @param size
+	 */
+	private static void report(String name, long[] result, int iterations, int size)
+	{
+		double micros = result[0] / 1000.0 / iterations;
+		System.out.println(String.format("%-10s %10.1f us/parse %8.1f MB/s %6d GCs %6d ms in GC", name, micros,
+				size / micros, result[1], result[2]));
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.model.zway.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.polito.elite.dog.drivers.zwave.util.JsonUpdate;
+import it.polito.elite.dog.drivers.zwave.util.ZWaveModelChanges;
+
+/**
+ * Checks that the {@link ZWaveModelReader} builds the same model trees as the
+ * plain Jackson databind, from a Z-Way data answer and from a following
+ * incremental update. The trees are compared through their serialized form.
+ */
+public class ZWaveModelReaderTest
+{
+	// the full Z-Way data answer
+	static final String FULL_DATA = "zway-data.json";
+
+	// the changes following the full answer
+	static final String DELTA_DATA = "zway-data-delta.json";
+
+	// the plain databind mapper, also used to compare the trees
+	private ObjectMapper databind;
+
+	// the mapper reading the model with the streaming reader
+	private ObjectMapper streaming;
+
+	@Before
+	public void setUp()
+	{
+		this.databind = new ObjectMapper();
+		this.streaming = ZWaveJsonModule.createMapper();
+	}
+
+	@Test
+	public void readsTheSameTreeAsDatabind() throws IOException
+	{
+		ZWaveModelTree expected = this.read(this.databind, FULL_DATA);
+		ZWaveModelTree actual = this.read(this.streaming, FULL_DATA);
+
+		assertEquals(this.databind.valueToTree(expected), this.databind.valueToTree(actual));
+	}
+
+	@Test
+	public void appliesTheSameChangesAsDatabind() throws IOException
+	{
+		ZWaveModelTree expected = this.update(this.databind, this.read(this.databind, FULL_DATA));
+		ZWaveModelTree actual = this.update(this.streaming, this.read(this.streaming, FULL_DATA));
+
+		assertNotNull(expected);
+		assertNotNull(actual);
+		assertEquals(this.databind.valueToTree(expected), this.databind.valueToTree(actual));
+	}
+
+	/**
+	 * Reads a model tree from the given resource
+	 *
+	 * @param mapper
+	 * @param resource
+	 * @return the model tree
+	 * @throws IOException
+	 */
+	private ZWaveModelTree read(ObjectMapper mapper, String resource) throws IOException
+	{
+		try (InputStream in = ZWaveModelReaderTest.class.getResourceAsStream(resource))
+		{
+			assertNotNull("Missing resource " + resource, in);
+			return mapper.readValue(in, ZWaveModelTree.class);
+		}
+	}
+
+	/**
+	 * Applies the changes of the delta resource to the given model tree
+	 *
+	 * @param mapper
+	 * @param tree
+	 * @return the updated tree, null if the changes cannot be applied
+	 * @throws IOException
+	 */
+	private ZWaveModelTree update(ObjectMapper mapper, ZWaveModelTree tree) throws IOException
+	{
+		try (InputStream in = ZWaveModelReaderTest.class.getResourceAsStream(DELTA_DATA))
+		{
+			assertNotNull("Missing resource " + DELTA_DATA, in);
+			return JsonUpdate.updateModel(mapper, tree, mapper.readTree(in), new ZWaveModelChanges());
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Dog  - Z-Wave
+ *
+ * Copyright 2013 Davide Aimone  and Dario Bonino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.drivers.zwave.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.polito.elite.dog.drivers.zwave.model.zway.json.ZWaveJsonModule;
+import it.polito.elite.dog.drivers.zwave.model.zway.json.ZWaveModelTree;
+
+/**
+ * Checks the incremental updates of {@link JsonUpdate}: changes which cannot
+ * be applied force a full update, the updated tree shares the unchanged
+ * elements with the previous one without modifying it, and the changed
+ * device instances are reported.
+ */
+public class JsonUpdateTest
+{
+	// the full Z-Way data answer, and the changes following it
+	private static final String FULL_DATA = "/it/polito/elite/dog/drivers/zwave/model/zway/json/zway-data.json";
+	private static final String DELTA_DATA = "/it/polito/elite/dog/drivers/zwave/model/zway/json/zway-data-delta.json";
+
+	// a changed data element, as sent by the Z-Way server
+	private static final String CHANGED_LEVEL = "{\"name\": \"level\", \"value\": true, \"type\": \"bool\", "
+			+ "\"invalidateTime\": 1699999900, \"updateTime\": 1700000004}";
+
+	// the mapper reading the model
+	private ObjectMapper mapper;
+
+	// the plain databind mapper, used to compare the trees
+	private ObjectMapper databind;
+
+	// the tree read from the full answer
+	private ZWaveModelTree tree;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.mapper = ZWaveJsonModule.createMapper();
+		this.databind = new ObjectMapper();
+
+		try (InputStream in = JsonUpdateTest.class.getResourceAsStream(FULL_DATA))
+		{
+			assertNotNull("Missing resource " + FULL_DATA, in);
+			this.tree = this.mapper.readValue(in, ZWaveModelTree.class);
+		}
+	}
+
+	@Test
+	public void returnsNullForAnUnknownDevice() throws IOException
+	{
+		JsonNode changes = this.mapper.readTree("{\"devices.999.data.isAwake\": " + CHANGED_LEVEL + "}");
+
+		assertNull(JsonUpdate.updateModel(this.mapper, this.tree, changes, new ZWaveModelChanges()));
+	}
+
+	@Test
+	public void returnsNullForAnUnknownInstance() throws IOException
+	{
+		JsonNode changes = this.mapper
+				.readTree("{\"devices.5.instances.7.commandClasses.37.data.level\": " + CHANGED_LEVEL + "}");
+
+		assertNull(JsonUpdate.updateModel(this.mapper, this.tree, changes, new ZWaveModelChanges()));
+	}
+
+	@Test
+	public void leavesThePreviousTreeUntouched() throws IOException
+	{
+		JsonNode before = this.databind.valueToTree(this.tree);
+
+		ZWaveModelTree updated = this.update(new ZWaveModelChanges());
+		assertNotNull(updated);
+
+		// the previous tree still holds the previous values
+		assertEquals(before, this.databind.valueToTree(this.tree));
+		assertEquals(this.tree.getGeneration() + 1, updated.getGeneration());
+		assertEquals(1700000005L, updated.getUpdateTime());
+
+		// the changed elements are copied, the others shared
+		assertNotSame(this.tree.getDevices().get(2), updated.getDevices().get(2));
+		assertNotSame(this.tree.getController(), updated.getController());
+		assertSame(this.tree.getDevices().get(4), updated.getDevices().get(4));
+		assertSame(this.tree.getDevices().get(5).getInstances().get(0),
+				updated.getDevices().get(5).getInstances().get(0));
+		assertEquals(123.4,
+				updated.getDevices().get(2).getInstances().get(0).getCommandClasses().get(50).getCommandClassesData()
+						.getDataElem("2").getDataElem("val").getValueAsDouble(),
+				0.0);
+	}
+
+	@Test
+	public void reportsTheChangedInstances() throws IOException
+	{
+		ZWaveModelChanges changed = new ZWaveModelChanges();
+		assertNotNull(this.update(changed));
+
+		assertFalse(changed.isFull());
+		assertTrue(changed.isControllerChanged());
+
+		// changed command classes
+		assertTrue(changed.isInstanceChanged(2, 0));
+		assertTrue(changed.isInstanceChanged(3, 0));
+		assertTrue(changed.isInstanceChanged(5, 1));
+		assertFalse(changed.isInstanceChanged(5, 0));
+
+		// changed device data, covering all its instances
+		assertTrue(changed.isDeviceChanged(1));
+		assertTrue(changed.isInstanceChanged(1, 0));
+
+		// unchanged devices
+		assertFalse(changed.isDeviceChanged(4));
+		assertFalse(changed.isDeviceChanged(6));
+	}
+
+	/**
+	 * Applies the changes of the delta resource to the full tree
+	 *
+	 * @param changed
+	 *            collects the changed device instances
+	 * @return the updated tree, null if the changes cannot be applied
+	 * @throws IOException
+	 */
+	private ZWaveModelTree update(ZWaveModelChanges changed) throws IOException
+	{
+		try (InputStream in = JsonUpdateTest.class.getResourceAsStream(DELTA_DATA))
+		{
+			assertNotNull("Missing resource " + DELTA_DATA, in);
+			return JsonUpdate.updateModel(this.mapper, this.tree, this.mapper.readTree(in), changed);
+		}
+	}
+}
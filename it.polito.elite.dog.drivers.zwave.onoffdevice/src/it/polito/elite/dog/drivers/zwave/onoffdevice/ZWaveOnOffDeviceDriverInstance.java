@@ -83,17 +83,8 @@ public class ZWaveOnOffDeviceDriverInstance extends ZWaveDriverInstance
 				new OnOffState(new OffStateValue()));
 
 		// get the initial state of the device
-		Runnable worker = new Runnable()
-		{
-			public void run()
-			{
-				if (handler != null)
-					handler.read(nodeInfo, true);
-			}
-		};
-
-		Thread workerThread = new Thread(worker);
-		workerThread.start();
+		if (handler != null)
+			handler.scheduleInitialRead(nodeInfo);
 
 	}
 
@@ -113,7 +104,7 @@ public class ZWaveOnOffDeviceDriverInstance extends ZWaveDriverInstance
 
 			if (changeOnOffState((ccEntry.getLevelAsInt() > 0) ? OnOffState.ON
 					: OnOffState.OFF))
-				this.updateStatus();
+				this.requestStatusUpdate();
 
 		}
 	}
@@ -148,14 +139,28 @@ public class ZWaveOnOffDeviceDriverInstance extends ZWaveDriverInstance
 				newState = new OnOffState(new OnStateValue());
 
 				// notify on
-				this.notifyOn();
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyOn();
+					}
+				});
 			}
 			else
 			{
 				newState = new OnOffState(new OffStateValue());
 
 				// notify off
-				this.notifyOff();
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyOff();
+					}
+				});
 			}
 			// ... then set the new state for the device and throw a state
 			currentState.setState(newState.getStateName(), newState);
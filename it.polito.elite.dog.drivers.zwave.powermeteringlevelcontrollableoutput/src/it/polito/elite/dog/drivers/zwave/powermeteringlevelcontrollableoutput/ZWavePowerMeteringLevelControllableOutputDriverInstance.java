@@ -131,17 +131,8 @@ public class ZWavePowerMeteringLevelControllableOutputDriverInstance extends ZWa
 		this.currentState.setState(LevelState.class.getSimpleName(), new LevelState(levelValue));
 
 		// get the initial state of the device
-		Runnable worker = new Runnable()
-		{
-			public void run()
-			{
-				if (handler != null)
-					handler.read(nodeInfo, true);
-			}
-		};
-
-		Thread workerThread = new Thread(worker);
-		workerThread.start();
+		if (handler != null)
+			handler.scheduleInitialRead(nodeInfo);
 
 	}
 
@@ -222,7 +213,7 @@ public class ZWavePowerMeteringLevelControllableOutputDriverInstance extends ZWa
 		}
 
 		if (updatedLevel || updatedOnOff || powerUpdated || energyUpdated)
-			this.updateStatus();
+			this.requestStatusUpdate();
 	}
 
 	/**
@@ -247,7 +238,14 @@ public class ZWavePowerMeteringLevelControllableOutputDriverInstance extends ZWa
 		logger.debug("Device " + device.getDeviceId() + " active energy " + value.toString());
 
 		// notify energy change
-		this.notifyNewActiveEnergyValue(value);
+		this.notifyAsync(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				notifyNewActiveEnergyValue(value);
+			}
+		});
 	}
 
 	/**
@@ -271,7 +269,14 @@ public class ZWavePowerMeteringLevelControllableOutputDriverInstance extends ZWa
 		logger.debug("Device " + device.getDeviceId() + " active power " + powerValue.toString());
 
 		// notify the state change
-		this.notifyNewActivePowerValue(powerValue);
+		this.notifyAsync(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				notifyNewActivePowerValue(powerValue);
+			}
+		});
 
 	}
 
@@ -304,14 +309,28 @@ public class ZWavePowerMeteringLevelControllableOutputDriverInstance extends ZWa
 				newState = new OnOffState(new OnStateValue());
 
 				// send the on notification
-				this.notifyOn();
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyOn();
+					}
+				});
 			}
 			else
 			{
 				newState = new OnOffState(new OffStateValue());
 
 				// send the off notification
-				this.notifyOff();
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyOff();
+					}
+				});
 			}
 
 			// ... then set the new state for the device and throw a state
@@ -358,7 +377,14 @@ public class ZWavePowerMeteringLevelControllableOutputDriverInstance extends ZWa
 			currentState.setState(LevelState.class.getSimpleName(), new LevelState(pValue));
 
 			// send the changed level notification
-			this.notifyChangedLevel(DecimalMeasure.valueOf(nLevel, Unit.ONE));
+			this.notifyAsync(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					notifyChangedLevel(DecimalMeasure.valueOf(nLevel, Unit.ONE));
+				}
+			});
 
 			// the state is changed
 			stateChanged = true;
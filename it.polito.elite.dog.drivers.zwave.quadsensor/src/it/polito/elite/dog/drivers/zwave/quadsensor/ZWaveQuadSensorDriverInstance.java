@@ -19,7 +19,6 @@ package it.polito.elite.dog.drivers.zwave.quadsensor;
 
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 import javax.measure.DecimalMeasure;
@@ -55,11 +54,14 @@ import it.polito.elite.dog.drivers.zwave.model.zway.json.DataElemObject;
 import it.polito.elite.dog.drivers.zwave.model.zway.json.Device;
 import it.polito.elite.dog.drivers.zwave.model.zway.json.Instance;
 import it.polito.elite.dog.drivers.zwave.network.ZWaveDriverInstance;
+import it.polito.elite.dog.drivers.zwave.network.info.ZWaveDataPoint;
 import it.polito.elite.dog.drivers.zwave.network.info.ZWaveNodeInfo;
+import it.polito.elite.dog.drivers.zwave.network.interfaces.ZWaveDataPointListener;
 import it.polito.elite.dog.drivers.zwave.network.interfaces.ZWaveNetwork;
 import it.polito.elite.dog.drivers.zwave.network.interfaces.ZWaveNetworkHandler;
 
-public class ZWaveQuadSensorDriverInstance extends ZWaveDriverInstance implements QuadSensor
+public class ZWaveQuadSensorDriverInstance extends ZWaveDriverInstance
+		implements QuadSensor, ZWaveDataPointListener
 {
 
 	// the class logger
@@ -73,6 +75,16 @@ public class ZWaveQuadSensorDriverInstance extends ZWaveDriverInstance implement
 	// the group set
 	private HashSet<Integer> groups;
 
+	// the measure data points, mapped to the key of the sensor data holding
+	// them (null if the value is directly stored in the command class data)
+	private HashMap<ZWaveDataPoint, String> measurePoints;
+
+	// the measure data points changed since the last status update
+	private Set<ZWaveDataPoint> changedMeasures;
+
+	// the movement state change flag
+	private boolean movementUpdated = false;
+
 	public ZWaveQuadSensorDriverInstance(ZWaveNetwork network, ControllableDevice device, int deviceId,
 			Set<Integer> instancesId, String gatewayEndpoint, int gatewayNodeId, int updateTimeMillis, Logger logger,
 			BundleContext context)
@@ -81,6 +93,8 @@ public class ZWaveQuadSensorDriverInstance extends ZWaveDriverInstance implement
 
 		// build inner data structures
 		this.groups = new HashSet<Integer>();
+		this.measurePoints = new HashMap<ZWaveDataPoint, String>();
+		this.changedMeasures = new HashSet<ZWaveDataPoint>();
 
 		// create a logger
 		this.logger = logger;
@@ -110,117 +124,128 @@ public class ZWaveQuadSensorDriverInstance extends ZWaveDriverInstance implement
 				new LightIntensityState(new LevelStateValue()));
 		this.currentState.setState(MovementState.class.getSimpleName(), new MovementState(new NotMovingStateValue()));
 
-		// get the initial state of the device
-		Runnable worker = new Runnable()
+		// subscribe the data points of interest
+		if (handler != null)
 		{
-			public void run()
+			int nodeId = nodeInfo.getDeviceNodeId();
+			for (Integer instanceId : nodeInfo.getInstanceSet())
 			{
-				if (handler != null)
-					handler.read(nodeInfo, true);
+				// instances with a single value store it directly in the
+				// command class data
+				this.subscribeMeasure(new ZWaveDataPoint(nodeId, instanceId,
+						ZWaveRawCommandClass.COMMAND_CLASS_SENSOR_MULTILEVEL, CommandClassesData.FIELD_VAL), null);
+
+				// instances with more values (e.g., ST814) store them under
+				// numeric keys
+				for (int sensorTypeId : new int[] { SensorType.SENSORTYPE_ID_TEMPERATURE,
+						SensorType.SENSORTYPE_ID_LUMINISCENCE, SensorType.SENSORTYPE_ID_HUMIDITY })
+				{
+					String sensorKey = String.valueOf(sensorTypeId);
+					this.subscribeMeasure(new ZWaveDataPoint(nodeId, instanceId,
+							ZWaveRawCommandClass.COMMAND_CLASS_SENSOR_MULTILEVEL,
+							sensorKey + "." + CommandClassesData.FIELD_VAL), sensorKey);
+				}
+
+				handler.subscribe(new ZWaveDataPoint(nodeId, instanceId,
+						ZWaveRawCommandClass.COMMAND_CLASS_SENSOR_BINARY, CommandClassesData.FIELD_LEVEL), this);
 			}
-		};
+		}
+
+		// get the initial state of the device
+		if (handler != null)
+			handler.scheduleInitialRead(nodeInfo);
+	}
 
-		Thread workerThread = new Thread(worker);
-		workerThread.start();
+	/**
+	 * Subscribes a measure data point
+	 * 
+	 * @param dataPoint
+	 *            the data point holding the measure value
+	 * @param sensorKey
+	 *            the key of the sensor data holding the value, or null
+	 */
+	private void subscribeMeasure(ZWaveDataPoint dataPoint, String sensorKey)
+	{
+		this.measurePoints.put(dataPoint, sensorKey);
+		handler.subscribe(dataPoint, this);
 	}
 
 	@Override
-	public void newMessageFromHouse(Device deviceNode, Instance instanceNode, Controller controllerNode, String sValue)
+	public synchronized void dataPointChanged(ZWaveDataPoint dataPoint, double oldValue, double newValue,
+			long updateTime)
+	{
+		if (dataPoint.getCommandClass() == ZWaveRawCommandClass.COMMAND_CLASS_SENSOR_BINARY)
+			// notify open/close only if changed
+			this.movementUpdated |= this
+					.changeMovementState((newValue > 0) ? MovementState.ISMOVING : MovementState.NOTMOVING);
+		else
+			// the unit of measure and the sensor type are needed to forward the
+			// measure, handled together with the updated device node
+			this.changedMeasures.add(dataPoint);
+	}
+
+	@Override
+	public synchronized void newMessageFromHouse(Device deviceNode, Instance instanceNode, Controller controllerNode,
+			String sValue)
 	{
 		// update deviceNode
 		this.deviceNode = deviceNode;
 
-		// the state change flags
+		// the state change flag
 		boolean measureUpdated = false;
-		boolean movementUpdated = false;
-
-		// Read the value for temperature, humidity or light intensity.
-		CommandClasses ccInst = instanceNode.getCommandClass(ZWaveRawCommandClass.COMMAND_CLASS_SENSOR_MULTILEVEL);
-
-		// Check if it is a real new value or if it is an old one
-		long globalUpdateTime = ccInst.getValUpdateTime();
-
-		// check if the instance contains only one value
-		if (globalUpdateTime > 0)
-		{
-			// check if the values are up-to-date
-			if (this.lastUpdateTime < globalUpdateTime)
-			{
-				// update last update time
-				lastUpdateTime = ccInst.getValUpdateTime();
-				nFailedUpdate = 0;
-
-				// Reads values and sensorType
-				double measure = ccInst.getVal();
-				String sensorType = ccInst.getSensorType();
-
-				// parse unit of measure
-				String unitOfMeasure = (String) ccInst.getCommandClassesData()
-						.getDataElemValue(CommandClassesData.FIELD_SCALESTRING);
-
-				// forward to the right method
-				measureUpdated = this.forwardMeasure(measure, unitOfMeasure, sensorType, this.lastUpdateTime);
-
-			}
 
-		}
-		else if (ccInst.getValUpdateTime() < 0)
+		// forward the changed measures
+		for (ZWaveDataPoint dataPoint : this.changedMeasures)
 		{
-			// handle the case in which instances are more complex than usual
-			// (e.g. in the ST814 case) and data is hidden in numeric keys.
-			// TODO: check if this is the best way (I have some doubt on it)
+			Instance measureInstance = deviceNode.getInstances().get(dataPoint.getInstanceId());
+			DataElemObject valueData = (measureInstance != null) ? dataPoint.resolve(measureInstance) : null;
 
-			// iterate over numeric keys
-			Map<String, DataElemObject> cmdClassData = ccInst.getCommandClassesData().getAllData();
-
-			for (String key : cmdClassData.keySet())
+			if (valueData != null)
 			{
-				// check for numeric key
-				try
+				CommandClasses ccInst = measureInstance
+						.getCommandClass(ZWaveRawCommandClass.COMMAND_CLASS_SENSOR_MULTILEVEL);
+
+				// get the sensor type and the unit of measure, either from
+				// the command class or from the sensor data
+				String sensorKey = this.measurePoints.get(dataPoint);
+				Object sensorType;
+				Object unitOfMeasure;
+				if (sensorKey == null)
 				{
-					// check if the key is a number, otherwise an exception will
-					// be thrown and caught
-					Integer.valueOf(key);
-
-					// get the element data associated to the key
-					DataElemObject sensorData = cmdClassData.get(key);
-
-					// check the last update time
-					long updateTime = sensorData.getUpdateTime();
-
-					// Read value
-					double measure = Double
-							.valueOf(sensorData.getDataElemValue(CommandClassesData.FIELD_VAL).toString());
+					sensorType = ccInst.getSensorType();
+					unitOfMeasure = ccInst.getCommandClassesData().getDataElemValue(CommandClassesData.FIELD_SCALESTRING);
+				}
+				else
+				{
+					DataElemObject sensorData = ccInst.get(sensorKey);
+					sensorType = sensorData.getDataElemValue(CommandClassesData.FIELD_SENSORTYPE);
+					unitOfMeasure = sensorData.getDataElemValue(CommandClassesData.FIELD_SCALESTRING);
+				}
 
-					// Read sensorType
-					String sensorType = (String) sensorData.getDataElemValue(CommandClassesData.FIELD_SENSORTYPE);
+				if ((sensorType != null) && (unitOfMeasure != null))
+				{
+					long updateTime = valueData.getUpdateTime();
 
-					// parse unit of measure
-					String unitOfMeasure = (String) sensorData.getDataElemValue(CommandClassesData.FIELD_SCALESTRING);
+					// update last update time
+					if (this.lastUpdateTime < updateTime)
+					{
+						this.lastUpdateTime = updateTime;
+						this.nFailedUpdate = 0;
+					}
 
 					// forward to the right method
-					measureUpdated = this.forwardMeasure(measure, unitOfMeasure, sensorType, updateTime);
-
-				}
-				catch (NumberFormatException ne)
-				{
-					// not a number, simply ignore it
+					measureUpdated |= this.forwardMeasure(ZWaveDataPoint.toDouble(valueData.getValue()),
+							unitOfMeasure.toString(), sensorType.toString(), updateTime);
 				}
 			}
-
 		}
+		this.changedMeasures.clear();
 
-		// Read the value for the movement data.
-		// Read the value associated with the right CommandClass.
-		CommandClasses ccEntry = instanceNode.getCommandClass(ZWaveRawCommandClass.COMMAND_CLASS_SENSOR_BINARY);
-
-		if (ccEntry != null)
-			// notify open/close only if changed
-			movementUpdated = changeMovementState(
-					(ccEntry.getLevelAsBoolean() ? MovementState.ISMOVING : MovementState.NOTMOVING));
-
-		if (measureUpdated || movementUpdated)
-			this.updateStatus();
+		if (measureUpdated || this.movementUpdated)
+		{
+			this.movementUpdated = false;
+			this.requestStatusUpdate();
+		}
 	}
 
 	/**
@@ -252,7 +277,15 @@ public class ZWaveQuadSensorDriverInstance extends ZWaveDriverInstance implement
 				MovementState movState = new MovementState(new MovingStateValue());
 				currentState.setState(MovementState.class.getSimpleName(), movState);
 
-				this.notifyStartedMovement(); // notify moving
+				// notify moving
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyStartedMovement();
+					}
+				});
 			}
 			else
 			{
@@ -260,7 +293,15 @@ public class ZWaveQuadSensorDriverInstance extends ZWaveDriverInstance implement
 				MovementState movState = new MovementState(new NotMovingStateValue());
 				currentState.setState(MovementState.class.getSimpleName(), movState);
 
-				this.notifyCeasedMovement(); // notify not moving
+				// notify not moving
+				this.notifyAsync(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						notifyCeasedMovement();
+					}
+				});
 
 			}
 
@@ -291,7 +332,14 @@ public class ZWaveQuadSensorDriverInstance extends ZWaveDriverInstance implement
 		// debug
 		logger.debug("Device " + device.getDeviceId() + " temperature " + temperatureValue.toString());
 
-		this.notifyNewTemperatureValue(temperatureValue);
+		this.notifyAsync(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				notifyNewTemperatureValue(temperatureValue);
+			}
+		});
 	}
 
 	private void changeHumidityState(double measure, String unitOfMeasure)
@@ -307,7 +355,14 @@ public class ZWaveQuadSensorDriverInstance extends ZWaveDriverInstance implement
 			pValue.setValue(relativeHumidity);
 			currentState.setState(HumidityMeasurementState.class.getSimpleName(), new HumidityMeasurementState(pValue));
 
-			this.notifyChangedRelativeHumidity(relativeHumidity);
+			this.notifyAsync(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					notifyChangedRelativeHumidity(relativeHumidity);
+				}
+			});
 
 			// debug
 			logger.debug("Device " + device.getDeviceId() + " humidity " + relativeHumidity.toString());
@@ -334,7 +389,14 @@ public class ZWaveQuadSensorDriverInstance extends ZWaveDriverInstance implement
 			// debug
 			logger.debug("Device " + device.getDeviceId() + " light-intensity " + luminosityValue.toString());
 
-			this.notifyNewLuminosityValue(luminosityValue);
+			this.notifyAsync(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					notifyNewLuminosityValue(luminosityValue);
+				}
+			});
 		}
 	}
 
@@ -94,17 +94,8 @@ public class ZWaveSinglePhaseElectricityMeterInstance extends ZWaveDriverInstanc
 				new SinglePhaseActivePowerMeasurementState(new StateValue[] { new ActivePowerStateValue() }));
 
 		// get the initial state of the device
-		Runnable worker = new Runnable()
-		{
-			public void run()
-			{
-				if (handler != null)
-					handler.read(nodeInfo, true);
-			}
-		};
-
-		Thread workerThread = new Thread(worker);
-		workerThread.start();
+		if (handler != null)
+			handler.scheduleInitialRead(nodeInfo);
 
 	}
 
@@ -178,7 +169,7 @@ public class ZWaveSinglePhaseElectricityMeterInstance extends ZWaveDriverInstanc
 				}
 
 				if (energyUpdated || powerUpdated)
-					this.updateStatus();
+					this.requestStatusUpdate();
 			}
 		}
 	}
@@ -204,7 +195,14 @@ public class ZWaveSinglePhaseElectricityMeterInstance extends ZWaveDriverInstanc
 		logger.debug("Device " + device.getDeviceId() + " active energy " + value.toString());
 
 		// notify energy change
-		this.notifyNewActiveEnergyValue(value);
+		this.notifyAsync(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				notifyNewActiveEnergyValue(value);
+			}
+		});
 
 	}
 
@@ -228,7 +226,14 @@ public class ZWaveSinglePhaseElectricityMeterInstance extends ZWaveDriverInstanc
 		logger.debug("Device " + device.getDeviceId() + " active power " + powerValue.toString());
 
 		// notify the state change
-		this.notifyNewActivePowerValue(powerValue);
+		this.notifyAsync(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				notifyNewActivePowerValue(powerValue);
+			}
+		});
 
 	}
 
@@ -105,17 +105,8 @@ public class ZWaveTemperatureAndHumiditySensorDriverInstance
 				new HumidityMeasurementState(new HumidityStateValue()));
 
 		// get the initial state of the device
-		Runnable worker = new Runnable()
-		{
-			public void run()
-			{
-				if (handler != null)
-					handler.read(nodeInfo, true);
-			}
-		};
-
-		Thread workerThread = new Thread(worker);
-		workerThread.start();
+		if (handler != null)
+			handler.scheduleInitialRead(nodeInfo);
 	}
 
 	@Override
@@ -212,7 +203,7 @@ public class ZWaveTemperatureAndHumiditySensorDriverInstance
 		}
 
 		if (measureUpdated)
-			this.updateStatus();
+			this.requestStatusUpdate();
 	}
 
 	private void changeTemperatureState(double measure, String unitOfMeasure)
@@ -237,7 +228,14 @@ public class ZWaveTemperatureAndHumiditySensorDriverInstance
 		logger.debug( "Device " + device.getDeviceId()
 				+ " temperature " + temperatureValue.toString());
 
-		this.notifyNewTemperatureValue(temperatureValue);
+		this.notifyAsync(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				notifyNewTemperatureValue(temperatureValue);
+			}
+		});
 	}
 
 	private void changeHumidityState(double measure, String unitOfMeasure)
@@ -256,7 +254,14 @@ public class ZWaveTemperatureAndHumiditySensorDriverInstance
 					HumidityMeasurementState.class.getSimpleName(),
 					new HumidityMeasurementState(pValue));
 
-			this.notifyChangedRelativeHumidity(relativeHumidity);
+			this.notifyAsync(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					notifyChangedRelativeHumidity(relativeHumidity);
+				}
+			});
 
 			// debug
 			logger.debug( "Device " + device.getDeviceId()
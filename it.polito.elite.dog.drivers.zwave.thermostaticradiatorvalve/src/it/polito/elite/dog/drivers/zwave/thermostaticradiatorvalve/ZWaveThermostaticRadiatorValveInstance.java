@@ -347,10 +347,17 @@ public class ZWaveThermostaticRadiatorValveInstance extends ZWaveDriverInstance
 					this.currentState.setState(TemperatureState.class.getSimpleName(), setPointState);
 
 					// notify the temperature change
-					this.notifyChangedDesiredTemperatureSetting(setPointTemperature);
+					this.notifyAsync(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							notifyChangedDesiredTemperatureSetting(setPointTemperature);
+						}
+					});
 
 					// notify the new state
-					this.updateStatus();
+					this.requestStatusUpdate();
 				}
 
 			}
@@ -456,12 +463,12 @@ public class ZWaveThermostaticRadiatorValveInstance extends ZWaveDriverInstance
 				currentState.setState(TemperatureState.class.getSimpleName(),
 						new TemperatureState(new TemperatureStateValue()));
 
-				// read the current state
-				if (handler != null)
-					handler.read(nodeInfo, true);
-
 				// set the is ready flag at true
 				isReady = true;
+
+				// read the current state, once ready to handle it
+				if (handler != null)
+					handler.scheduleInitialRead(nodeInfo);
 			}
 		};
 
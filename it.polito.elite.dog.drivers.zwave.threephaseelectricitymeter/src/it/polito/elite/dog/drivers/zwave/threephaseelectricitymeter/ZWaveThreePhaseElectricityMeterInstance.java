@@ -143,17 +143,8 @@ public class ZWaveThreePhaseElectricityMeterInstance extends ZWaveDriverInstance
 						activeEnergyStateL2, activeEnergyStateL3));
 
 		// get the initial state of the device
-		Runnable worker = new Runnable()
-		{
-			public void run()
-			{
-				if (handler != null)
-					handler.read(nodeInfo, true);
-			}
-		};
-
-		Thread workerThread = new Thread(worker);
-		workerThread.start();
+		if (handler != null)
+			handler.scheduleInitialRead(nodeInfo);
 
 	}
 
@@ -202,7 +193,14 @@ public class ZWaveThreePhaseElectricityMeterInstance extends ZWaveDriverInstance
 							ThreePhaseActiveEnergyState.class.getSimpleName(),
 							phaseID, value);
 
-					notifyNewActiveEnergyValue(phaseID, value);
+					this.notifyAsync(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							notifyNewActiveEnergyValue(phaseID, value);
+						}
+					});
 
 					// update the state change flag
 					energyUpdated = true;
@@ -229,7 +227,14 @@ public class ZWaveThreePhaseElectricityMeterInstance extends ZWaveDriverInstance
 									.getSimpleName(),
 							phaseID, value);
 
-					notifyNewActivePowerValue(phaseID, value);
+					this.notifyAsync(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							notifyNewActivePowerValue(phaseID, value);
+						}
+					});
 
 					// update the state change flag
 					powerUpdated = true;
@@ -238,7 +243,7 @@ public class ZWaveThreePhaseElectricityMeterInstance extends ZWaveDriverInstance
 		}
 
 		if (energyUpdated || powerUpdated)
-			this.updateStatus();
+			this.requestStatusUpdate();
 	}
 
 	@Override